@@ -47,10 +47,12 @@ import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.android.gms.maps.model.PolylineOptions;
 import com.mumu.locationmocker.location.IntentLocationManager;
 import com.mumu.locationmocker.service.HeadService;
 
 import java.text.DecimalFormat;
+import java.util.ArrayList;
 
 public class MapLocationViewer extends AppCompatActivity
         implements
@@ -61,6 +63,7 @@ public class MapLocationViewer extends AppCompatActivity
         ActivityCompat.OnRequestPermissionsResultCallback {
 
     private static final int LOCATION_PERMISSION_REQUEST_CODE = 1;
+    private static final int IMPORT_TRACK_REQUEST_CODE = 2;
     private static final String TAG = "PokemonGoGo";
     private final boolean mEnableVerbose = false;
     private final Handler mHandler = new Handler(Looper.getMainLooper());
@@ -68,7 +71,7 @@ public class MapLocationViewer extends AppCompatActivity
     private boolean mPermissionDenied = false;
     private boolean mCameraTracking = false;
     private GoogleMap mMap;
-    private LatLng mUserSelectPoint;
+    private final ArrayList<LatLng> mUserSelectPoints = new ArrayList<>();
     private LongPressLocationSource mLongPressLocationSource;
     private LocationManager mLocationManager;
     private FusedLocationProviderClient mFusedLocationClient;
@@ -81,7 +84,6 @@ public class MapLocationViewer extends AppCompatActivity
         setContentView(R.layout.activity_map_location_viewer);
 
         mLongPressLocationSource = new LongPressLocationSource();
-        mUserSelectPoint = null;
 
         SupportMapFragment mapFragment =
                 (SupportMapFragment) getSupportFragmentManager().findFragmentById(R.id.map);
@@ -105,12 +107,17 @@ public class MapLocationViewer extends AppCompatActivity
 
         //noinspection SimplifiableIfStatement
         if (id == R.id.action_finish) {
-            if (mUserSelectPoint == null) {
+            if (mUserSelectPoints.isEmpty()) {
                 Toast.makeText(this, getString(R.string.msg_map_no_point), Toast.LENGTH_SHORT).show();
-            } else {
+            } else if (mUserSelectPoints.size() == 1) {
                 final Intent intent = new Intent(this, HeadService.class);
                 intent.setAction(HeadService.ACTION_HANDLE_NAVIGATION);
-                intent.putExtra(HeadService.EXTRA_DATA, mUserSelectPoint);
+                intent.putExtra(HeadService.EXTRA_DATA, mUserSelectPoints.get(0));
+                startService(intent);
+            } else {
+                final Intent intent = new Intent(this, HeadService.class);
+                intent.setAction(HeadService.ACTION_HANDLE_ROUTE);
+                intent.putParcelableArrayListExtra(HeadService.EXTRA_DATA, new ArrayList<>(mUserSelectPoints));
                 startService(intent);
             }
             return true;
@@ -118,16 +125,27 @@ public class MapLocationViewer extends AppCompatActivity
             finish();
             return true;
         } else if (id == R.id.action_teleport) {
-            if (mUserSelectPoint == null) {
+            if (mUserSelectPoints.isEmpty()) {
                 Toast.makeText(this, getString(R.string.msg_map_no_point), Toast.LENGTH_SHORT).show();
             } else {
                 Toast.makeText(this, getString(R.string.msg_map_shu), Toast.LENGTH_SHORT).show();
                 final Intent intent = new Intent(this, HeadService.class);
                 intent.setAction(HeadService.ACTION_HANDLE_TELEPORT);
-                intent.putExtra(HeadService.EXTRA_DATA, mUserSelectPoint);
+                intent.putExtra(HeadService.EXTRA_DATA, mUserSelectPoints.get(mUserSelectPoints.size() - 1));
                 startService(intent);
             }
             return true;
+        } else if (id == R.id.action_import_track) {
+            final Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType("*/*");
+            startActivityForResult(intent, IMPORT_TRACK_REQUEST_CODE);
+            return true;
+        } else if (id == R.id.action_clear_points) {
+            mUserSelectPoints.clear();
+            if (mMap != null)
+                mMap.clear();
+            return true;
         } else if (id == R.id.action_camera_track) {
             StringBuilder sb = new StringBuilder();
 
@@ -239,17 +257,33 @@ public class MapLocationViewer extends AppCompatActivity
         });
     }
 
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode == IMPORT_TRACK_REQUEST_CODE && resultCode == RESULT_OK && data != null) {
+            final Intent intent = new Intent(this, HeadService.class);
+            intent.setAction(HeadService.ACTION_HANDLE_TRACK);
+            intent.setData(data.getData());
+            intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            startService(intent);
+        }
+    }
+
     /**
      * A {@link LocationSource} which reports a new location whenever a user long presses the map
-     * at the point at which a user long pressed the map.
+     * at the point at which a user long pressed the map. Every long press adds a point to the
+     * route, navigation goes through them in order.
      */
     private class LongPressLocationSource implements GoogleMap.OnMapLongClickListener {
         @Override
         public void onMapLongClick(@NonNull LatLng point) {
             Log.d(TAG, "User hit LAT = " + point.latitude + " and LONG = " + point.longitude);
-            mUserSelectPoint = point;
+            mUserSelectPoints.add(point);
             mMap.clear();
-            mMap.addMarker(new MarkerOptions().position(mUserSelectPoint).title("Marker"));
+            for (int i = 0; i < mUserSelectPoints.size(); i++)
+                mMap.addMarker(new MarkerOptions().position(mUserSelectPoints.get(i)).title("Point " + (i + 1)));
+            if (mUserSelectPoints.size() > 1)
+                mMap.addPolyline(new PolylineOptions().addAll(mUserSelectPoints).geodesic(true));
         }
     }
 
@@ -16,6 +16,8 @@
 
 package com.mumu.locationmocker.location;
 
+import com.mumu.locationmocker.engine.WalkDirection;
+
 public class FakeLocation {
     public double latitude;
     public double longitude;
@@ -23,15 +25,15 @@ public class FakeLocation {
     public float bearing;
     public double accuracy;
 
-    public static final int NORTH = 0;
-    public static final int SOUTH = 1;
-    public static final int WEST = 2;
-    public static final int EAST = 3;
-    public static final int NORTHWEST = 4;
-    public static final int WESTSOUTH = 5;
-    public static final int SOUTHEAST = 6;
-    public static final int EASTNORTH = 7;
-    public static final int STAY = 8;
+    public static final int NORTH = WalkDirection.NORTH;
+    public static final int SOUTH = WalkDirection.SOUTH;
+    public static final int WEST = WalkDirection.WEST;
+    public static final int EAST = WalkDirection.EAST;
+    public static final int NORTHWEST = WalkDirection.NORTHWEST;
+    public static final int WESTSOUTH = WalkDirection.WESTSOUTH;
+    public static final int SOUTHEAST = WalkDirection.SOUTHEAST;
+    public static final int EASTNORTH = WalkDirection.EASTNORTH;
+    public static final int STAY = WalkDirection.STAY;
 
     public FakeLocation(double la, double lo, double alt, double acc) {
         latitude = la;
@@ -31,35 +31,58 @@ import android.os.SystemClock;
 import android.util.Log;
 import android.widget.Toast;
 
+import com.mumu.locationmocker.engine.LocationEngine;
+import com.mumu.locationmocker.engine.LocationSnapshot;
+import com.mumu.locationmocker.engine.PaceProfile;
+import com.mumu.locationmocker.engine.PushThrottle;
+import com.mumu.locationmocker.geo.GeoMath;
+import com.mumu.locationmocker.scheduler.TickScheduler;
+import com.mumu.locationmocker.track.TrackRecorder;
+
+import java.io.File;
+
 public class FakeLocationManager {
     private final static String TAG = "PokemonGoGo";
     private Context mContext;
-    private double mCurrentLat = 25.0335;
-    private double mCurrentLong = 121.5642;
-    private double mCurrentAlt = 10.2;
-    private double mCurrentAccuracy = 6.91;
-    private float mCurrentBearing = 0.0f;
-    private FakeLocation mCurrentFakeLocation;
-    private double mAutoLat = -1;
-    private double mAutoLong = -1;
-    private static final double mPaceLat = 0.000038;
-    private static final double mPaceLong = 0.000039;
-    private static double mPaceLatShift = 0.000001;
-    private static double mPaceLongShift = 0.000001;
-    private static double mSpeed = 1;
-    private static boolean mIsAutoPilot = false;
-    private static boolean mIsAutoPilotInterrupter = true;
+    private final LocationEngine mEngine;
+    private volatile FakeLocation mCurrentFakeLocation;
     private OnNavigationCompleteListener mOnNavigationCompleteListener = null;
     private static FakeLocationManager mSelf;
     LocationManager mLocationManager;
 
-    private LocationUpdater mUpdateThread;
-    private boolean mKeepUpdating = false;
+    private static final long UPDATE_INTERVAL_MS = 250;
+    private static final long RECORD_SEGMENT_SIZE = 4 * 1024 * 1024;
+    private static final int RECORD_MAX_SEGMENTS = 16;
+    private static final String[] PROVIDERS = {GPS_PROVIDER, NETWORK_PROVIDER, FUSED_PROVIDER};
+    private static final int GPS = 0;
+    private static final int NETWORK = 1;
+    private static final int FUSED = 2;
+    private static final float[] PROVIDER_ACCURACY = {1.0f, 20.0f, 1.0f};
+
+    /*
+     * GPS and network push right away on a move past their threshold, at their own
+     * cadence on smaller moves and as a heartbeat when the position does not move,
+     * fused follows whichever of them pushed
+     */
+    private final PushThrottle[] mThrottles = {
+            new PushThrottle(1000, 5000, 1.0),
+            new PushThrottle(5000, 20000, 10.0),
+    };
+
+    // test provider state, registered once per enable cycle and reused by every push
+    private final boolean[] mProviderEnabled = new boolean[PROVIDERS.length];
+    private final Location[] mProviderLocations = new Location[PROVIDERS.length];
+    private TrackRecorder mRecorder;
 
     public FakeLocationManager(Context context, FakeLocation defaultLoc) {
         FakeLocation defaultLocation;
         mContext = context;
-        mCurrentFakeLocation = new FakeLocation(mCurrentLat, mCurrentLong, mCurrentAlt, mCurrentAccuracy);
+        for (int i = 0; i < PROVIDERS.length; i++)
+            mProviderLocations[i] = new Location(PROVIDERS[i]);
+        mEngine = new LocationEngine(this::onEngineLocation, SystemClock::elapsedRealtimeNanos,
+                TickScheduler.get());
+        mEngine.setPaceProfile(PaceProfile.FAKE);
+        mCurrentFakeLocation = toFakeLocation(mEngine.getPosition());
 
         // Start fetch information from framework hacking
         mLocationManager = (LocationManager)mContext.getSystemService(Context.LOCATION_SERVICE);
@@ -68,7 +91,7 @@ public class FakeLocationManager {
         if (defaultLoc != null) {
             defaultLocation = defaultLoc;
         } else if (shouldUseLastLocation) {
-            defaultLocation = new FakeLocation(mCurrentLat, mCurrentLong, mCurrentAlt, mCurrentAccuracy);
+            defaultLocation = toFakeLocation(mEngine.getPosition());
         } else {
             defaultLocation = new FakeLocation(25.0335, 121.5642, 10.2, 6.91); //this is the location of Taipei 101
         }
@@ -103,6 +126,11 @@ public class FakeLocationManager {
         return true;
     }
 
+    private static FakeLocation toFakeLocation(LocationSnapshot position) {
+        return new FakeLocation(position.latitude, position.longitude, position.altitude,
+                position.accuracy, position.bearing);
+    }
+
     public FakeLocation getCurrentLocation() {
         return mCurrentFakeLocation;
     }
@@ -117,12 +145,9 @@ public class FakeLocationManager {
     }
 
     public double getDistance(FakeLocation start, FakeLocation end) {
-        float[] results = new float[1];
-
         if (start != null && end != null) {
-            Location.distanceBetween(start.latitude, start.longitude,
-                    end.latitude, end.longitude, results);
-            return results[0];
+            return GeoMath.vincenty(start.latitude, start.longitude,
+                    end.latitude, end.longitude);
         }
 
         return 0.0;
@@ -138,40 +163,15 @@ public class FakeLocationManager {
             return currentDirection;
         }
 
-        // When we out of bound
-        double ori_lat = origin.latitude;
-        double ori_lng = origin.longitude;
-
-        if (getDistance(getCurrentLocation(), origin) > radius) {
-            if ((mCurrentLat - ori_lat) > 0 && (mCurrentLong - ori_lng) > 0)
-                return FakeLocation.WESTSOUTH;
-
-            if ((mCurrentLat - ori_lat) > 0 && (mCurrentLong - ori_lng) < 0)
-                return FakeLocation.SOUTHEAST;
-
-            if ((mCurrentLat - ori_lat) < 0 && (mCurrentLong - ori_lng) > 0)
-                return FakeLocation.NORTHWEST;
-
-            if ((mCurrentLat - ori_lat) < 0 && (mCurrentLong - ori_lng) < 0)
-                return FakeLocation.EASTNORTH;
-        }
-        return currentDirection;
+        return mEngine.getNewDirectionInBound(origin.latitude, origin.longitude, radius, currentDirection);
     }
 
     // Setters
     public void setEnable(boolean enable) {
         if (enable) {
-            if (mUpdateThread != null) {
-                mUpdateThread.interrupt();
-            }
-            mKeepUpdating = true;
-            mUpdateThread = new LocationUpdater(this);
-            mUpdateThread.start();
+            mEngine.setRepeatInterval(UPDATE_INTERVAL_MS);
         } else {
-            if (mUpdateThread != null) {
-                mUpdateThread.interrupt();
-            }
-            mKeepUpdating = false;
+            mEngine.setRepeatInterval(0);
             setMockDisable();
         }
     }
@@ -190,26 +190,23 @@ public class FakeLocationManager {
         setLocation(fakeLocation);
     }
 
-    private void setMockLocation(FakeLocation fakeLocation) {
+    private synchronized void setMockLocation(FakeLocation fakeLocation, boolean force) {
+        long now = SystemClock.elapsedRealtimeNanos();
         try {
-            String[] providers = {GPS_PROVIDER, NETWORK_PROVIDER, FUSED_PROVIDER};
-            Location mockLocation;
-
-            for(String provider : providers) {
-                mLocationManager.addTestProvider(provider, false, false, false,
-                        false, false, true, true,
-                        ProviderProperties.POWER_USAGE_LOW, ProviderProperties.ACCURACY_FINE);
-                mLocationManager.setTestProviderEnabled(provider, true);
-
-                mockLocation = new Location(provider);
-                mockLocation.setLatitude(fakeLocation.latitude);
-                mockLocation.setLongitude(fakeLocation.longitude);
-                mockLocation.setAltitude(fakeLocation.altitude);
-                mockLocation.setBearing(fakeLocation.bearing);
-                mockLocation.setTime(System.currentTimeMillis());
-                mockLocation.setAccuracy(1);
-                mockLocation.setElapsedRealtimeNanos(SystemClock.elapsedRealtimeNanos());
-                mLocationManager.setTestProviderLocation(provider, mockLocation);
+            int source = -1;
+            for (int i = GPS; i <= NETWORK; i++) {
+                if (force || mThrottles[i].shouldPush(now, fakeLocation.latitude, fakeLocation.longitude)) {
+                    pushProvider(i, fakeLocation, PROVIDER_ACCURACY[i], now);
+                    mThrottles[i].onPushed(now, fakeLocation.latitude, fakeLocation.longitude);
+                    if (source < 0)
+                        source = i;
+                }
+            }
+            if (source >= 0) {
+                pushProvider(FUSED, fakeLocation, PROVIDER_ACCURACY[source], now);
+                if (mRecorder != null)
+                    mRecorder.onLocation(fakeLocation.latitude, fakeLocation.longitude,
+                            fakeLocation.altitude, PROVIDER_ACCURACY[source], fakeLocation.bearing, 0);
             }
         }  catch (IllegalArgumentException e) {
             Log.d(TAG, "set mock location failed: " + e.getLocalizedMessage());
@@ -218,40 +215,72 @@ public class FakeLocationManager {
         mCurrentFakeLocation = fakeLocation;
     }
 
-    private void setMockDisable() {
+    private void pushProvider(int index, FakeLocation fakeLocation, float accuracy, long now) {
+        if (!mProviderEnabled[index]) {
+            mLocationManager.addTestProvider(PROVIDERS[index], false, false, false,
+                    false, false, true, true,
+                    ProviderProperties.POWER_USAGE_LOW, ProviderProperties.ACCURACY_FINE);
+            mLocationManager.setTestProviderEnabled(PROVIDERS[index], true);
+            mProviderEnabled[index] = true;
+        }
+
+        Location mockLocation = mProviderLocations[index];
+        mockLocation.setLatitude(fakeLocation.latitude);
+        mockLocation.setLongitude(fakeLocation.longitude);
+        mockLocation.setAltitude(fakeLocation.altitude);
+        mockLocation.setBearing(fakeLocation.bearing);
+        mockLocation.setTime(System.currentTimeMillis());
+        mockLocation.setAccuracy(accuracy);
+        mockLocation.setElapsedRealtimeNanos(now);
+        mLocationManager.setTestProviderLocation(PROVIDERS[index], mockLocation);
+    }
+
+    /*
+     * Record every location pushed to the providers into segment files in
+     * directory, a null directory stops recording
+     */
+    public synchronized void setRecording(File directory) {
+        if (mRecorder != null) {
+            mRecorder.closeAsync(null);
+            mRecorder = null;
+        }
+        if (directory != null)
+            mRecorder = new TrackRecorder(directory, SystemClock::elapsedRealtimeNanos,
+                    RECORD_SEGMENT_SIZE, RECORD_MAX_SEGMENTS);
+    }
+
+    private synchronized void setMockDisable() {
+        for (PushThrottle throttle : mThrottles)
+            throttle.reset();
+
         try {
-            String[] providers = {GPS_PROVIDER, NETWORK_PROVIDER, FUSED_PROVIDER};
-            Location mockLocation;
-
-            for(String provider : providers) {
-                mLocationManager.addTestProvider(provider, false, false, false,
-                        false, false, true, true,
-                        ProviderProperties.POWER_USAGE_LOW, ProviderProperties.ACCURACY_FINE);
-                mLocationManager.setTestProviderEnabled(provider, false);
+            for (int i = 0; i < PROVIDERS.length; i++) {
+                if (!mProviderEnabled[i])
+                    mLocationManager.addTestProvider(PROVIDERS[i], false, false, false,
+                            false, false, true, true,
+                            ProviderProperties.POWER_USAGE_LOW, ProviderProperties.ACCURACY_FINE);
+                mLocationManager.setTestProviderEnabled(PROVIDERS[i], false);
+                mProviderEnabled[i] = false;
             }
         }  catch (IllegalArgumentException e) {
             Log.d(TAG, "set mock location failed: " + e.getLocalizedMessage());
         }
     }
 
-    private void commitCurrentLocation() {
-        FakeLocation fakeLocation = new FakeLocation(mCurrentLat, mCurrentLong, mCurrentAlt, mCurrentAccuracy, mCurrentBearing);
-        setMockLocation(fakeLocation);
+    private void onEngineLocation(double lat, double lng, double alt, float acc, float bear, float spd) {
+        setMockLocation(new FakeLocation(lat, lng, alt, acc, bear), false);
     }
 
     public void setLocation(FakeLocation loc) {
         Log.d(TAG, "Set location " + loc.toString());
-        mCurrentLat = loc.latitude;
-        mCurrentLong = loc.longitude;
-        mCurrentAlt = loc.altitude;
-        mCurrentAccuracy = loc.accuracy;
-        mCurrentBearing = loc.bearing;
-        setMockLocation(loc);
+        mEngine.setPosition(loc.latitude, loc.longitude, loc.altitude, (float) loc.accuracy,
+                loc.bearing, mEngine.getSpeed());
+        setMockLocation(loc, true);
     }
 
     public void setSpeed(double speed) {
         if (speed > 0.0)
-            mSpeed = speed;
+            mEngine.setPaceSpeed(speed);
         else
             Log.w(TAG, "Unsupported speed");
     }
@@ -262,171 +291,29 @@ public class FakeLocationManager {
 
     // main functions
     public void autoPilotTo(double targetLat, double targetLong, boolean interruptible) {
-        mIsAutoPilot = true;
-        mIsAutoPilotInterrupter = interruptible;
-        mAutoLat = targetLat;
-        mAutoLong = targetLong;
-        new AutoPilotThread().start();
+        Log.d(TAG, "Start auto piloting .. ");
+        mEngine.navigateTo(targetLat, targetLong, interruptible, () -> {
+            Log.d(TAG, "Auto pilot has sent you home.");
+            if (mOnNavigationCompleteListener != null)
+                mOnNavigationCompleteListener.onNavigationComplete();
+        });
     }
 
     public void cancelAutoPilot() {
-        mIsAutoPilot = false;
+        mEngine.cancelNavigation();
     }
 
     public void walkPace(int direction, double ratio) {
-        double coordinateChange;
-        // must introduce random variable
-        controlRandomShift();
-
         // ratio must be within 0.0 ~ 1.0
         if (ratio > 1.0 || ratio < 0.0) {
             Log.e(TAG, "Unacceptable ratio " + ratio + " set to 1.0");
             ratio = 1.0;
         }
 
-        // if auto pilot is on going, cancel it if interruptible
-        if (mIsAutoPilot && mIsAutoPilotInterrupter) {
-            Log.w(TAG, "Auto pilot is in progress, cancel auto pilot first");
-            mIsAutoPilot = false;
-        }
-
-        switch (direction) {
-            case FakeLocation.EAST:
-                coordinateChange = (mPaceLong + mPaceLongShift) * mSpeed;
-                mCurrentLong += coordinateChange * ratio;
-                mCurrentLat += coordinateChange * (1 - ratio);
-                break;
-            case FakeLocation.WEST:
-                coordinateChange = (mPaceLong + mPaceLongShift) * mSpeed;
-                mCurrentLong -= coordinateChange * ratio;
-                mCurrentLat -= coordinateChange * (1 - ratio);
-                break;
-            case FakeLocation.NORTH:
-                coordinateChange = (mPaceLat + mPaceLatShift) * mSpeed;
-                mCurrentLat += coordinateChange * ratio;
-                mCurrentLong += coordinateChange * (1 - ratio);
-                break;
-            case FakeLocation.SOUTH:
-                coordinateChange = (mPaceLat + mPaceLatShift) * mSpeed;
-                mCurrentLat -= coordinateChange * ratio;
-                mCurrentLong -= coordinateChange * (1 - ratio);
-                break;
-            case FakeLocation.NORTHWEST:
-                coordinateChange = (mPaceLat + mPaceLongShift) * mSpeed;
-                mCurrentLong -= coordinateChange * 0.5;
-                mCurrentLat += coordinateChange * 0.5;
-                break;
-            case FakeLocation.WESTSOUTH:
-                coordinateChange = (mPaceLong + mPaceLongShift) * mSpeed;
-                mCurrentLong -= coordinateChange * 0.5;
-                mCurrentLat -= coordinateChange * 0.5;
-                break;
-            case FakeLocation.SOUTHEAST:
-                coordinateChange = (mPaceLat + mPaceLatShift) * mSpeed;
-                mCurrentLat -= coordinateChange * 0.5;
-                mCurrentLong += coordinateChange * 0.5;
-                break;
-            case FakeLocation.EASTNORTH:
-                coordinateChange = (mPaceLong + mPaceLongShift) * mSpeed;
-                mCurrentLong += coordinateChange * 0.5;
-                mCurrentLat += coordinateChange * 0.5;
-                break;
-            case FakeLocation.STAY:
-                return;
-            default:
-                Log.d(TAG, "Not supported direction");
-                return;
-        }
-
-        commitCurrentLocation();
-    }
-
-    private void controlRandomShift() {
-        // shift is controlled to be within -0.000001 ~ 0.000001
-        double shift = Math.random() / 1000000 - 0.0000005;
-        double accShift = Math.random() * 2 - 1;
-        double bearShift = Math.random() * 10;
-        mPaceLatShift = mPaceLatShift + shift;
-        mPaceLongShift = mPaceLongShift + shift;
-        mCurrentAccuracy += accShift;
-        mCurrentBearing += bearShift;
-
-        if (mPaceLatShift > 0.000002 || mPaceLatShift < -0.000002)
-            mPaceLatShift = 0.000001;
-
-        if (mPaceLongShift > 0.000002 || mPaceLongShift < -0.000002)
-            mPaceLongShift = 0.000001;
+        if (mEngine.isNavigating())
+            Log.w(TAG, "Auto pilot is in progress, walking cancels it if interruptible");
 
-        if (mCurrentAccuracy > 9.9 || mCurrentAccuracy < 1.5)
-            mCurrentAccuracy = 5.2;
-
-        if (mCurrentBearing > 10) {
-            mCurrentBearing = 0;
-        }
-    }
-
-    private class LocationUpdater extends Thread {
-        private FakeLocationManager flm;
-
-        public LocationUpdater(FakeLocationManager m) {
-            flm = m;
-        }
-        @Override
-        public void run() {
-            while (mKeepUpdating) {
-                flm.commitCurrentLocation();
-                try {
-                    Thread.sleep(500);
-                } catch (InterruptedException e) {
-                    mKeepUpdating = false;
-                    return;
-                }
-            }
-        }
-    }
-
-    // Threading runnable
-    private class AutoPilotThread extends Thread {
-        @Override
-        public void run() {
-            Log.d(TAG, "Start auto piloting .. ");
-            double diffLat, diffLong, incrementLat, incrementLong;
-            while(mIsAutoPilot
-                    && !(Math.abs(mCurrentLat - mAutoLat) < mPaceLat)
-                    && !(Math.abs(mCurrentLong - mAutoLong) < mPaceLong)) {
-
-                controlRandomShift();
-                diffLat = mAutoLat - mCurrentLat;
-                diffLong = mAutoLong - mCurrentLong;
-                incrementLat = (diffLat / (Math.abs(diffLong) + Math.abs(diffLat))) * (mPaceLat + mPaceLatShift) * mSpeed;
-                incrementLong = (diffLong / (Math.abs(diffLong) + Math.abs(diffLat))) * (mPaceLong + mPaceLongShift) * mSpeed;
-
-                if (Math.abs(incrementLat) > 2 * mPaceLat * mSpeed ||
-                        Math.abs(incrementLong) > 2 * mPaceLong * mSpeed) {
-                    Log.w(TAG, "Calculate next increment of lat or long too high, abort it");
-                    Log.w(TAG, "incrementLat = " + incrementLat + ", incrementLong = " + incrementLong);
-                    Log.w(TAG, "incrementLat bound = " + 2 * mPaceLat * mSpeed + ", incrementLong bound = " + 2 * mPaceLong * mSpeed);
-                    break;
-                }
-
-                mCurrentLong += incrementLong;
-                mCurrentLat += incrementLat;
-
-                commitCurrentLocation();
-
-                try {
-                    Thread.sleep(1000);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
-
-            Log.d(TAG, "Auto pilot has sent you home.");
-            if (mOnNavigationCompleteListener != null)
-                mOnNavigationCompleteListener.onNavigationComplete();
-
-            mIsAutoPilot = false;
-        }
+        mEngine.walkPace(direction, ratio);
     }
 
     /*
@@ -18,54 +18,194 @@ package com.mumu.locationmocker.location;
 
 import android.content.Context;
 import android.location.Location;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.google.android.gms.maps.model.LatLng;
+import com.mumu.locationmocker.engine.CoalescingSink;
+import com.mumu.locationmocker.engine.LocationEngine;
+import com.mumu.locationmocker.engine.LocationSink;
+import com.mumu.locationmocker.engine.LocationSnapshot;
+import com.mumu.locationmocker.engine.PlaybackSource;
+import com.mumu.locationmocker.geo.GeoMath;
+import com.mumu.locationmocker.scheduler.TickScheduler;
 import com.mumu.locationmocker.service.JoystickView;
+import com.mumu.locationmocker.track.Track;
+import com.mumu.locationmocker.track.TrackRecorder;
+import com.mumu.locationmocker.transport.FrameRing;
+import com.mumu.locationmocker.transport.FrameStreamer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
 
 public class IntentLocationManager implements JoystickView.JoystickListener {
     private final String TAG = "PokemonGoGo";
+    private static final String SEED_PROPERTY = "debug.locationmocker.seed";
+    private static final String RECORD_PROPERTY = "debug.locationmocker.record";
+    private static final String PROTOCOL_PROPERTY = "debug.locationmocker.protocol";
+    private static final String TRANSPORT_PROPERTY = "debug.locationmocker.transport";
+    private static final String RING_PROPERTY = "debug.locationmocker.ring";
+    private static final int RING_CAPACITY = 256;
+    private static final long RECORD_SEGMENT_SIZE = 4 * 1024 * 1024;
+    private static final int RECORD_MAX_SEGMENTS = 16;
     private final IntentPropertyImpl mIntentPropImpl;
-
-    private double mCurrentLat = 25.0335;
-    private double mCurrentLong = 121.5642;
-    private double mCurrentAlt = 10.2;
-    private float  mCurrentAccuracy = 6.91f;
-    private float  mCurrentBearing = 30.0f;
-    private float  mCurrentSpeed = 0.3f;
+    private final LocationEngine mEngine;
+    private final HandlerThread mEmitterThread;
     private Location mOriginalLocation;
-
-    private double mPaceAmount = 0.000002;
-    private double mPaceShift = 0.0000001;
-    private double mPaceSpeed = 10;
-
-    private AutoPilot mAutoPilot;
-    private MockLocationListener mMockListenerClient;
+    private volatile MockLocationListener mMockListenerClient;
+    private final LocationSink mBroadcastSink = this::sendIntentLocation;
+    private volatile LocationSink mOutput = mBroadcastSink;
+    private FrameStreamer mFrameStreamer;
+    private volatile TrackRecorder mRecorder;
 
     public IntentLocationManager(Context context) {
         mIntentPropImpl = new IntentPropertyImpl(context);
+
+        // broadcasts leave from their own looper, joystick and pilot only fill the mailbox
+        mEmitterThread = new HandlerThread("LocationEmitter");
+        mEmitterThread.start();
+        Handler emitterHandler = new Handler(mEmitterThread.getLooper());
+        CoalescingSink sink = new CoalescingSink(this::onEngineLocation, emitterHandler::post);
+
+        mEngine = createEngine(sink);
+
+        String protocol = IntentPropertyImpl.getSystemProperty(PROTOCOL_PROPERTY);
+        if (!protocol.isEmpty()) {
+            try {
+                setProtocolVersion(Integer.parseInt(protocol));
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Ignore invalid protocol version " + protocol);
+            }
+        }
+
+        // one output at a time, the socket wins over the ring
+        String socketName = IntentPropertyImpl.getSystemProperty(TRANSPORT_PROPERTY);
+        String ringPath = IntentPropertyImpl.getSystemProperty(RING_PROPERTY);
+        if (!socketName.isEmpty())
+            setSocketTransport(socketName);
+        else if (!ringPath.isEmpty())
+            setSharedRing(new File(ringPath), RING_CAPACITY);
+
+        if ("1".equals(IntentPropertyImpl.getSystemProperty(RECORD_PROPERTY)))
+            setRecording(new File(context.getFilesDir(), "tracks"));
+    }
+
+    /*
+     * Setting debug.locationmocker.seed to a number makes every run of the
+     * simulation reproduce the same track
+     */
+    private LocationEngine createEngine(LocationSink sink) {
+        String seed = IntentPropertyImpl.getSystemProperty(SEED_PROPERTY);
+        if (!seed.isEmpty()) {
+            try {
+                return new LocationEngine(sink, SystemClock::elapsedRealtimeNanos, TickScheduler.get(),
+                        Long.parseLong(seed));
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Ignore invalid simulation seed " + seed);
+            }
+        }
+        return new LocationEngine(sink, SystemClock::elapsedRealtimeNanos, TickScheduler.get());
+    }
+
+    public void release() {
+        mEngine.release();
+        setSocketTransport(null);
+        mEmitterThread.quitSafely();
+        setRecording(null);
+    }
+
+    /*
+     * Record every location sent from now on into segment files in directory,
+     * the recorder writes from its own thread. A null directory stops recording.
+     */
+    public synchronized void setRecording(File directory) {
+        TrackRecorder recorder = mRecorder;
+        if (recorder != null) {
+            mRecorder = null;
+            // the rest of the buffer is written on the recorder thread, not here
+            recorder.closeAsync(() -> {
+                Log.d(TAG, "Recorded " + recorder.getRecordedCount() + " locations, dropped " +
+                        recorder.getDroppedCount());
+                if (recorder.getError() != null)
+                    Log.e(TAG, "Recording failed: " + recorder.getError().getMessage());
+            });
+        }
+
+        if (directory != null) {
+            Log.d(TAG, "Record sent locations into " + directory);
+            mRecorder = new TrackRecorder(directory, SystemClock::elapsedRealtimeNanos,
+                    RECORD_SEGMENT_SIZE, RECORD_MAX_SEGMENTS);
+        }
+    }
+
+    /*
+     * Stream locations as binary frames to a consumer listening on the given
+     * abstract local socket, broadcasts are still used while it is not reachable.
+     * A null name goes back to broadcasts only. Set debug.locationmocker.transport
+     * to the socket name to start streaming at startup.
+     */
+    public synchronized void setSocketTransport(String socketName) {
+        closeTransport();
+        if (socketName != null) {
+            mFrameStreamer = new FrameStreamer(new LocalSocketConnector(socketName),
+                    mBroadcastSink, SystemClock::elapsedRealtimeNanos);
+            mOutput = mFrameStreamer;
+        }
+    }
+
+    /*
+     * Write locations into a ring of frames in the given memory mapped file
+     * instead of broadcasting them, consumers poll the file. A null file goes
+     * back to broadcasts only. Set debug.locationmocker.ring to the path of the
+     * file to start writing the ring at startup.
+     */
+    public synchronized boolean setSharedRing(File file, int capacity) {
+        closeTransport();
+        if (file == null)
+            return true;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    FrameRing.bytesFor(capacity));
+            mOutput = FrameRing.create(buffer, capacity).asSink(SystemClock::elapsedRealtimeNanos);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot map frame ring " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void closeTransport() {
+        mOutput = mBroadcastSink;
+        if (mFrameStreamer != null) {
+            mFrameStreamer.close();
+            mFrameStreamer = null;
+        }
     }
 
     public void sendIntentLocation(Location location) {
-        mIntentPropImpl.sendLocation(
-                "" + location.getLatitude(),
-                "" + location.getLongitude(),
-                "" + location.getAltitude(),
-                "" + location.getAccuracy(),
-                "" + location.getBearing(),
-                "" + location.getSpeed()
-        );
+        mIntentPropImpl.sendLocation(location.getLatitude(), location.getLongitude(), location.getAltitude(),
+                location.getAccuracy(), location.getBearing(), location.getSpeed(),
+                location.getElapsedRealtimeNanos());
     }
 
     public void sendIntentLocation(double lat, double lng, double alt, float acc, float bear, float spd) {
-        mIntentPropImpl.sendLocation(
-                "" + lat,
-                "" + lng,
-                "" + alt,
-                "" + acc,
-                "" + bear,
-                "" + spd
-        );
+        mIntentPropImpl.sendLocation(lat, lng, alt, acc, bear, spd, SystemClock.elapsedRealtimeNanos());
+    }
+
+    /*
+     * IntentPropertyImpl.PROTOCOL_STRING or PROTOCOL_PRIMITIVE, the receiver
+     * must understand the version chosen here. Set debug.locationmocker.protocol
+     * to the version to pick it at startup.
+     */
+    public void setProtocolVersion(int version) {
+        mIntentPropImpl.setProtocolVersion(version);
     }
 
     public void sendMock(boolean enable) {
@@ -74,46 +214,53 @@ public class IntentLocationManager implements JoystickView.JoystickListener {
 
     @Override
     public void onJoystickMoved(float xPercent, float yPercent) {
-        if (mAutoPilot != null) {
-            mAutoPilot.cancelPilot();
-        }
-        walkPace(xPercent, -yPercent);
+        mEngine.cancelNavigation();
+        mEngine.stopIncubating();
+        mEngine.stopPlayback();
+        mEngine.walk(xPercent, -yPercent);
     }
 
+    /*
+     * The same multiplier also speeds up playback of recorded tracks
+     */
     public void setPaceSpeed(double speed) {
-        mPaceSpeed = speed;
-        if (mAutoPilot != null)
-            mAutoPilot.setPilotSpeed(speed);
+        mEngine.setPaceSpeed(speed);
+        mEngine.setPlaybackSpeed(speed);
     }
 
     public void setPaceShift(double shift) {
-        mPaceShift = shift;
+        mEngine.setPaceShift(shift);
     }
 
     public void sendLocation(double lat, double lng) {
-        mCurrentLat = lat;
-        mCurrentLong = lng;
+        mEngine.setLatLng(lat, lng);
     }
 
     public LatLng getLocation() {
-        return new LatLng(mCurrentLat, mCurrentLong);
+        LocationSnapshot position = mEngine.getPosition();
+        return new LatLng(position.latitude, position.longitude);
     }
 
     public void applyLocation() {
-        sendIntentLocation(mCurrentLat, mCurrentLong, mCurrentAlt, mCurrentAccuracy, mCurrentBearing, mCurrentSpeed);
-        if (mMockListenerClient != null) {
-            mMockListenerClient.onMockLocation(new LatLng(mCurrentLat, mCurrentLong));
+        mEngine.emit();
+    }
+
+    // runs on the emitter looper with the newest position only
+    private void onEngineLocation(double lat, double lng, double alt, float acc, float bear, float spd) {
+        mOutput.onLocation(lat, lng, alt, acc, bear, spd);
+        TrackRecorder recorder = mRecorder;
+        if (recorder != null)
+            recorder.onLocation(lat, lng, alt, acc, bear, spd);
+        MockLocationListener listener = mMockListenerClient;
+        if (listener != null) {
+            listener.onMockLocation(new LatLng(lat, lng));
         }
     }
 
     public void setOriginalLocation(Location location) {
         mOriginalLocation = location;
-        mCurrentLat = location.getLatitude();
-        mCurrentLong = location.getLongitude();
-        mCurrentAlt = location.getAltitude();
-        mCurrentAccuracy = location.getAccuracy();
-        mCurrentBearing = location.getBearing();
-        mCurrentSpeed = location.getSpeed();
+        mEngine.setPosition(location.getLatitude(), location.getLongitude(), location.getAltitude(),
+                location.getAccuracy(), location.getBearing(), location.getSpeed());
     }
 
     public void setMockListener(MockLocationListener listener) {
@@ -128,139 +275,98 @@ public class IntentLocationManager implements JoystickView.JoystickListener {
         return mOriginalLocation != null;
     }
 
-    private void controlRandomShift() {
-        // shift is controlled to be within -0.000001 ~ 0.000001
-        double shift = Math.random() / 10000000 - 0.00000005;
-        float accShift = (float) (Math.random() * 2 - 1);
-        mPaceShift = mPaceShift + shift;
-        mCurrentAccuracy += accShift;
-
-        if (mPaceShift > 0.0000002 || mPaceShift < -0.0000002)
-            mPaceShift = 0.0000001;
-
-        if (mCurrentAccuracy > 9.9f || mCurrentAccuracy < 1.5f)
-            mCurrentAccuracy = 5.2f;
-    }
-
-    private void walkPace(float x, float y) {
-        // must introduce random variable
-        controlRandomShift();
-
-        double nextPace = (mPaceAmount + mPaceShift) * mPaceSpeed;
-        mCurrentLat = mCurrentLat + nextPace * y;
-        mCurrentLong = mCurrentLong + nextPace * x;
-        applyLocation();
-    }
-
     public void teleportTo(LatLng latLng) {
-        mCurrentLat = latLng.latitude;
-        mCurrentLong = latLng.longitude;
+        mEngine.setLatLng(latLng.latitude, latLng.longitude);
         applyLocation();
     }
 
     public void navigateTo(LatLng latLng, OnNavigationCompleteListener l) {
-        OnNavigationCompleteListener autoPilotListener = () -> {
-            Log.d(TAG, "receive navigation done. unset pilot");
-            mAutoPilot = null;
+        LocationSnapshot from = mEngine.getPosition();
+        Log.d(TAG, "Start auto piloting from <" + from.latitude + "," + from.longitude + "> to <" +
+                latLng.latitude + "," + latLng.longitude + ">, " +
+                (int) GeoMath.haversine(from.latitude, from.longitude,
+                        latLng.latitude, latLng.longitude) + " m");
+
+        mEngine.navigateTo(latLng.latitude, latLng.longitude, true, () -> {
+            Log.d(TAG, "Auto pilot has sent you home.");
             l.onNavigationComplete();
-        };
+        });
+    }
 
-        if (mAutoPilot != null) {
-            mAutoPilot.cancelPilot();
-            mAutoPilot = null;
+    /*
+     * Navigate through every point of route in order
+     */
+    public void navigateRoute(List<LatLng> route, OnNavigationCompleteListener l) {
+        double[] lats = new double[route.size()];
+        double[] lngs = new double[route.size()];
+        for (int i = 0; i < route.size(); i++) {
+            lats[i] = route.get(i).latitude;
+            lngs[i] = route.get(i).longitude;
         }
+        Log.d(TAG, "Start auto piloting through " + route.size() + " points");
 
-        mAutoPilot = new AutoPilot(this, latLng, mPaceAmount, mPaceSpeed, autoPilotListener);
-        mAutoPilot.startPilot();
+        mEngine.navigateRoute(lats, lngs, true, () -> {
+            Log.d(TAG, "Auto pilot has finished the route.");
+            l.onNavigationComplete();
+        });
     }
 
     /*
-     * Auto Pilot Component
+     * Navigate along an imported track, starting with a hop from the current
+     * location to its first point
      */
-    private class AutoPilot extends Thread {
-        boolean isAutoPilot = true;
-        double pace;
-        double paceSpeed;
-        double paceShift = 0.000001;
-        LatLng targetPosition;
-        LatLng currentPosition;
-        IntentLocationManager ilm;
-        OnNavigationCompleteListener listener;
-
-        public AutoPilot(IntentLocationManager lm, LatLng target, double p, double spd, OnNavigationCompleteListener l) {
-            ilm = lm;
-            targetPosition = target;
-            pace = p;
-            paceSpeed = spd;
-            listener = l;
-        }
+    public void navigateTrack(Track track, OnNavigationCompleteListener l) {
+        Log.d(TAG, "Start auto piloting along a track of " + track.size() + " points");
 
-        private void sendAndApplyLocation(double lat, double lng) {
-            ilm.sendLocation(lat, lng);
-            ilm.applyLocation();
-        }
+        mEngine.navigateRoute(track.getLatitudes(), track.getLongitudes(), true, () -> {
+            Log.d(TAG, "Auto pilot has finished the track.");
+            l.onNavigationComplete();
+        });
+    }
 
-        public void setPilotSpeed(double spd) {
-            paceSpeed = spd;
-        }
+    /*
+     * Replay a recording made by TrackRecorder or FixRecorder with its original
+     * timing, scaled by the pace speed
+     */
+    public void startPlayback(PlaybackSource source, OnNavigationCompleteListener l) {
+        Log.d(TAG, "Start playing back a recorded track");
+        mEngine.startPlayback(source, () -> {
+            Log.d(TAG, "Playback has reached the end of the track.");
+            l.onNavigationComplete();
+        });
+    }
 
-        public void startPilot() {
-            isAutoPilot = true;
-            start();
-        }
+    public void stopPlayback() {
+        mEngine.stopPlayback();
+    }
 
-        public void cancelPilot() {
-            isAutoPilot = false;
-            interrupt();
-        }
+    public boolean isPlaying() {
+        return mEngine.isPlaying();
+    }
 
-        @Override
-        public void run() {
-            currentPosition = ilm.getLocation();
-            double diffLat, diffLng, incLat, incLng;
-
-            Log.d(TAG, "Start auto piloting from <" + currentPosition.latitude + "," + currentPosition.longitude + "> to <" +
-                    targetPosition.latitude + "," + targetPosition.longitude + ">");
-
-            while(isAutoPilot) {
-                double currentLat = currentPosition.latitude;
-                double currentLng = currentPosition.longitude;
-
-                if ((Math.abs(currentPosition.latitude - targetPosition.latitude) < pace)
-                        || (Math.abs(currentPosition.longitude - targetPosition.longitude) < pace)) {
-                    break;
-                }
-
-                diffLat = targetPosition.latitude - currentLat;
-                diffLng = targetPosition.longitude - currentLng;
-                double normalizeAmount = (Math.abs(diffLng) + Math.abs(diffLat));
-                incLat = (diffLat / normalizeAmount) * (pace + paceShift) * paceSpeed;
-                incLng = (diffLng / normalizeAmount) * (pace + paceShift) * paceSpeed;
-
-                if (Math.abs(incLat) > 2 * pace * paceSpeed ||
-                        Math.abs(incLng) > 2 * pace * paceSpeed) {
-                    Log.w(TAG, "Calculate next increment of lat or long too high, abort it");
-                    Log.w(TAG, "incrementLat = " + incLat + ", incrementLong = " + incLng);
-                    Log.w(TAG, "incrementLat bound = " + 2 * pace * paceSpeed + ", incrementLong bound = " + 2 * pace * paceSpeed);
-                    break;
-                }
-
-                sendAndApplyLocation(currentLat + incLat, currentLng + incLng);
-                currentPosition = new LatLng(currentLat + incLat, currentLng + incLng);
-
-                try {
-                    Thread.sleep(1000);
-                } catch (Exception e) {
-                    break;
-                }
-            }
+    /*
+     * Wander around the current location within radius meters until the
+     * joystick, a navigation or stopIncubating() ends it
+     */
+    public void startIncubating(double radius) {
+        Log.d(TAG, "Start incubating within " + radius + " m");
+        mEngine.startIncubating(radius);
+    }
 
-            Log.d(TAG, "Auto pilot has sent you home.");
-            if (listener != null)
-                listener.onNavigationComplete();
+    public void stopIncubating() {
+        mEngine.stopIncubating();
+    }
 
-            isAutoPilot = false;
-        }
+    public boolean isIncubating() {
+        return mEngine.isIncubating();
+    }
+
+    /*
+     * Share of the incubating circle walked so far, 0.0 ~ 1.0, or -1 if not
+     * incubating
+     */
+    public double getIncubatingCoverage() {
+        return mEngine.getIncubatingCoverage();
     }
 
     public interface OnNavigationCompleteListener {
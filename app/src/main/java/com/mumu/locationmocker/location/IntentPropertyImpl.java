@@ -2,14 +2,35 @@ package com.mumu.locationmocker.location;
 
 import android.content.Context;
 import android.content.Intent;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.mumu.locationmocker.system.PropertyCache;
+import com.mumu.locationmocker.system.ShellSession;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 
 public class IntentPropertyImpl {
+    private final static String TAG = "PokemonGoGo";
     private final static String INTENT_ACTION = "com.mumu.pokemongogo.action.SETPROP";
+    private final static long PROPERTY_TTL_MS = 5000;
+
+    /*
+     * Location payload versions. Version 1 sends every value as a String extra,
+     * version 2 sends primitive double/float extras together with the protocol
+     * version, a sequence number and the elapsed realtime of the fix.
+     */
+    public static final int PROTOCOL_STRING = 1;
+    public static final int PROTOCOL_PRIMITIVE = 2;
+
+    private static ShellSession mShellSession;
+    private static final PropertyCache mProperties = new PropertyCache(() -> runShell("getprop"),
+            SystemClock::elapsedRealtimeNanos, PROPERTY_TTL_MS);
+
     private Context mContext;
+    private int mProtocolVersion = PROTOCOL_STRING;
+    private long mSequence = 0;
+    private final Intent mLocationIntent = new Intent(INTENT_ACTION);
     String EXTRA_EN  = "enable";
     String EXTRA_DBG = "debug";
     String EXTRA_LAT = "lat";
@@ -18,6 +39,9 @@ public class IntentPropertyImpl {
     String EXTRA_ACC = "acc";
     String EXTRA_BER = "bear";
     String EXTRA_SPD = "speed";
+    String EXTRA_VER = "ver";
+    String EXTRA_SEQ = "seq";
+    String EXTRA_TS  = "ts";
 
     public IntentPropertyImpl(Context context) {
         mContext = context;
@@ -41,6 +65,41 @@ public class IntentPropertyImpl {
         mContext.sendBroadcast(intent);
     }
 
+    public void setProtocolVersion(int version) {
+        if (version == PROTOCOL_STRING || version == PROTOCOL_PRIMITIVE)
+            mProtocolVersion = version;
+    }
+
+    public int getProtocolVersion() {
+        return mProtocolVersion;
+    }
+
+    /*
+     * Send a location with the current protocol version. The intent of version 2
+     * is reused, sendBroadcast has parceled it by the time it returns.
+     */
+    public synchronized void sendLocation(double lat, double lng, double alt, float acc, float bear, float spd,
+                                          long elapsedRealtimeNanos) {
+        if (mProtocolVersion == PROTOCOL_STRING) {
+            sendLocation(String.valueOf(lat), String.valueOf(lng), String.valueOf(alt),
+                    String.valueOf(acc), String.valueOf(bear), String.valueOf(spd));
+            return;
+        }
+
+        Intent intent = mLocationIntent;
+        intent.putExtra(EXTRA_VER, PROTOCOL_PRIMITIVE);
+        intent.putExtra(EXTRA_SEQ, mSequence++);
+        intent.putExtra(EXTRA_TS, elapsedRealtimeNanos);
+        intent.putExtra(EXTRA_EN, "1");
+        intent.putExtra(EXTRA_LAT, lat);
+        intent.putExtra(EXTRA_LNG, lng);
+        intent.putExtra(EXTRA_ALT, alt);
+        intent.putExtra(EXTRA_ACC, acc);
+        intent.putExtra(EXTRA_BER, bear);
+        intent.putExtra(EXTRA_SPD, spd);
+        mContext.sendBroadcast(intent);
+    }
+
     public void sendMock(String enable) {
         Intent intent = new Intent(INTENT_ACTION);
         intent.putExtra(EXTRA_EN, enable);
@@ -53,31 +112,49 @@ public class IntentPropertyImpl {
         mContext.sendBroadcast(intent);
     }
 
+    /*
+     * Properties come from a cached getprop dump that is at most PROPERTY_TTL_MS
+     * old, call refreshSystemProperties() after changing one.
+     */
     public static String getSystemProperty(String property) {
-        return runCommand("getprop " + property);
+        return mProperties.get(property);
+    }
+
+    public static void refreshSystemProperties() {
+        mProperties.refresh();
+    }
+
+    /*
+     * Keep one shell alive and run every command in it instead of forking a new
+     * shell per command. Disabling it kills the shell.
+     */
+    public static synchronized void setPersistentShell(boolean enable) {
+        if (enable && mShellSession == null) {
+            mShellSession = new ShellSession();
+        } else if (!enable && mShellSession != null) {
+            mShellSession.close();
+            mShellSession = null;
+        }
     }
 
     /*
      * Run the specific command, you should not execute a command that will
      * cost more than 5 seconds.
      */
-    public static String runCommand(String cmdInput){
-        String retStr = "";
-        BufferedReader output;
-
-        String[] cmd = {"/system/bin/sh", "-c", cmdInput};
+    public static String runCommand(String cmdInput) {
         try {
-            Process p = Runtime.getRuntime().exec(cmd);
-            output = new BufferedReader(new InputStreamReader(p.getInputStream(), "UTF-8"));
-            retStr = output.readLine();
-            if (retStr == null) {
-                retStr = "";
-            }
-
+            return runShell(cmdInput);
         } catch (IOException e) {
-            e.printStackTrace();
+            Log.e(TAG, "Run command " + cmdInput + " failed: " + e.getMessage());
+            return "";
         }
+    }
 
-        return retStr;
+    private static String runShell(String cmdInput) throws IOException {
+        ShellSession session;
+        synchronized (IntentPropertyImpl.class) {
+            session = mShellSession;
+        }
+        return session != null ? session.run(cmdInput) : ShellSession.exec(cmdInput);
     }
 }
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.location;
+
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+
+import com.mumu.locationmocker.transport.FrameStreamer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/*
+ * Connects the frame streamer to a consumer listening on an abstract
+ * namespace local socket
+ */
+public class LocalSocketConnector implements FrameStreamer.Connector {
+    private final String mName;
+
+    public LocalSocketConnector(String name) {
+        mName = name;
+    }
+
+    @Override
+    public FrameStreamer.Connection connect() throws IOException {
+        final LocalSocket socket = new LocalSocket();
+        try {
+            socket.connect(new LocalSocketAddress(mName, LocalSocketAddress.Namespace.ABSTRACT));
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        final OutputStream output = socket.getOutputStream();
+
+        return new FrameStreamer.Connection() {
+            @Override
+            public void write(byte[] buf, int offset, int length) throws IOException {
+                output.write(buf, offset, length);
+            }
+
+            @Override
+            public void close() {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+    }
+}
@@ -9,6 +9,8 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 
+import com.mumu.locationmocker.geo.GeoMath;
+
 public class LocationPoller implements LocationListener {
     private static final String TAG = "LocationPoller";
     private Context mContext;
@@ -25,12 +27,10 @@ public class LocationPoller implements LocationListener {
     public void onLocationChanged(@NonNull Location location) {
         Log.d(TAG, "維度:"+ location.getLatitude() +
                 " 經度:"+ location.getLongitude());
-        if (mLastLocation != null) {
-            float[] distance = new float[3];
-            Location.distanceBetween(mLastLocation.getLatitude(), mLastLocation.getLongitude(),
-                    location.getLatitude(), location.getLongitude(), distance);
-            if (mCallback != null)
-                mCallback.onMoveDistance(distance[0]);
+        if (mLastLocation != null && mCallback != null) {
+            double distance = GeoMath.vincenty(mLastLocation.getLatitude(), mLastLocation.getLongitude(),
+                    location.getLatitude(), location.getLongitude());
+            mCallback.onMoveDistance((float) distance);
         }
         mLastLocation = location;
         if (mCallback != null)
@@ -20,12 +20,17 @@ import com.google.android.gms.location.LocationRequest;
 import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
 import com.mumu.locationmocker.AppSharedObject;
+import com.mumu.locationmocker.geo.GeoFormat;
+import com.mumu.locationmocker.track.FixRecorder;
 
+import java.io.File;
 import java.text.DecimalFormat;
+import java.util.List;
 
 public class RealLocationTracker implements LocationListener {
     private final String TAG = "PokemonGoGo";
     private final boolean mEnableVerbose = false;
+    private static final String RECORD_FIXES_PROPERTY = "debug.locationmocker.record.fixes";
 
     private final Context mContext;
     private final LocationManager mLocationManager;
@@ -33,9 +38,11 @@ public class RealLocationTracker implements LocationListener {
     private final LocationCallback mFusedLocationCallback = new LocationCallback() {
         @Override
         public void onLocationResult(LocationResult locationResult) {
-            for (Location location : locationResult.getLocations()) {
-                // Use location data
+            List<Location> locations = locationResult.getLocations();
+            for (int i = 0; i < locations.size(); i++) {
+                Location location = locations.get(i);
                 printLocationLog("Fus", location);
+                recordFix(location);
                 mFusedLocation = location;
                 mFusedCallbackTime = System.currentTimeMillis();
             }
@@ -46,6 +53,7 @@ public class RealLocationTracker implements LocationListener {
     private Location mFusedLocation;
     private long mGpsCallbackTime;
     private long mFusedCallbackTime;
+    private volatile FixRecorder mFixRecorder;
 
     public RealLocationTracker(Context context) {
         mContext = context;
@@ -60,6 +68,7 @@ public class RealLocationTracker implements LocationListener {
             ilm.setOriginalLocation(location);
         }
         printLocationLog("Loc", location);
+        recordFix(location);
         mGpsLocation = location;
         mGpsCallbackTime = System.currentTimeMillis();
     }
@@ -72,6 +81,9 @@ public class RealLocationTracker implements LocationListener {
                 ActivityCompat.checkSelfPermission(mContext, Manifest.permission.ACCESS_COARSE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
             return;
         }
+        if ("1".equals(IntentPropertyImpl.getSystemProperty(RECORD_FIXES_PROPERTY)))
+            setRecording(new File(mContext.getFilesDir(), "fixes/fixes-" + System.currentTimeMillis() + ".bin"));
+
         mLocationManager.requestLocationUpdates(gpsProvider, 1000, 0, this);
         mGpsLocation = mLocationManager.getLastKnownLocation(gpsProvider);
 
@@ -85,9 +97,55 @@ public class RealLocationTracker implements LocationListener {
         Log.d(TAG, "RealLocationTracker: stop listening");
         mLocationManager.removeUpdates(this);
         mFusedLocationClient.removeLocationUpdates(mFusedLocationCallback);
+        setRecording(null);
+    }
+
+    /*
+     * Log every real fix from now on into file, a null file stops recording.
+     * The recorder only copies numbers in the callbacks, its own thread writes.
+     */
+    public synchronized void setRecording(File file) {
+        FixRecorder recorder = mFixRecorder;
+        if (recorder != null) {
+            mFixRecorder = null;
+            // the last block is written on the recorder thread, not here
+            recorder.closeAsync(() -> {
+                Log.d(TAG, "Recorded " + recorder.getRecordedCount() + " real fixes, dropped " +
+                        recorder.getDroppedCount());
+                if (recorder.getError() != null)
+                    Log.e(TAG, "Recording real fixes failed: " + recorder.getError().getMessage());
+            });
+        }
+
+        if (file != null) {
+            Log.d(TAG, "Record real fixes into " + file);
+            mFixRecorder = new FixRecorder(file);
+        }
+    }
+
+    private void recordFix(Location location) {
+        FixRecorder recorder = mFixRecorder;
+        if (recorder == null)
+            return;
+
+        String provider = location.getProvider();
+        int providerId = FixRecorder.PROVIDER_OTHER;
+        if (LocationManager.GPS_PROVIDER.equals(provider))
+            providerId = FixRecorder.PROVIDER_GPS;
+        else if (LocationManager.NETWORK_PROVIDER.equals(provider))
+            providerId = FixRecorder.PROVIDER_NETWORK;
+        else if (LocationManager.FUSED_PROVIDER.equals(provider))
+            providerId = FixRecorder.PROVIDER_FUSED;
+
+        recorder.onFix(providerId, location.getElapsedRealtimeNanos(), location.getTime(),
+                location.getLatitude(), location.getLongitude(), location.getAltitude(),
+                location.getAccuracy(), location.getBearing(), location.getSpeed());
     }
 
     private void printLocationLog(String tag, Location location) {
+        if (!mEnableVerbose)
+            return;
+
         DecimalFormat df = new DecimalFormat("0.000000");
         String sb = tag +
                 ": " +
@@ -97,13 +155,11 @@ public class RealLocationTracker implements LocationListener {
                 df.format(location.getLongitude()) +
                 "> acc: " +
                 df.format(location.getAccuracy());
-        if (mEnableVerbose)
-            Log.d(TAG, sb);
+        Log.d(TAG, sb);
     }
 
     public String getLocationString(Location location) {
-        DecimalFormat df = new DecimalFormat("0.00000");
-        return df.format(location.getLatitude()) + ", " + df.format(location.getLongitude());
+        return GeoFormat.formatLatLng(location.getLatitude(), location.getLongitude());
     }
 
     public Location getLastGpsLocation() {
@@ -25,9 +25,12 @@ import android.content.Context;
 import android.content.Intent;
 import android.graphics.Color;
 import android.location.Location;
+import android.net.Uri;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.core.app.NotificationCompat;
@@ -37,22 +40,42 @@ import com.google.android.gms.maps.model.LatLng;
 import com.mumu.locationmocker.AppSharedObject;
 import com.mumu.locationmocker.MainActivity;
 import com.mumu.locationmocker.R;
+import com.mumu.locationmocker.engine.PlaybackSource;
 import com.mumu.locationmocker.location.*;
+import com.mumu.locationmocker.scheduler.TickScheduler;
+import com.mumu.locationmocker.scheduler.TickTask;
+import com.mumu.locationmocker.track.Recordings;
+import com.mumu.locationmocker.track.Track;
+import com.mumu.locationmocker.track.TrackImporter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class HeadService extends Service {
     private static final String TAG = "PokemonGoGo";
     public static final String ACTION_HANDLE_NAVIGATION = "ActionNavigation";
     public static final String ACTION_HANDLE_TELEPORT = "ActionTeleport";
     public static final String ACTION_HANDLE_INCUBATING = "ActionIncubating";
+    public static final String ACTION_HANDLE_ROUTE = "ActionRoute";
+    public static final String ACTION_HANDLE_TRACK = "ActionTrack";
+    public static final String ACTION_HANDLE_PLAYBACK = "ActionPlayback";
     public static final String EXTRA_DATA = "DataLocation";
 
     private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mImportExecutor = Executors.newSingleThreadExecutor();
     private Context mContext;
     private TopUIController mUIController;
     private RealLocationTracker mRealLocationTracker;
     private IntentLocationManager mIntentLocationManager;
 
-    private boolean mMonitorLocationFlag = false;
+    private static final long MONITOR_INTERVAL_MS = 500;
+    private TickTask mMonitorTask;
 
     @Override
     public IBinder onBind(Intent intent) {
@@ -73,6 +96,9 @@ public class HeadService extends Service {
             mUIController.destroy();
         if (mRealLocationTracker != null)
             mRealLocationTracker.stopListening();
+        if (mIntentLocationManager != null)
+            mIntentLocationManager.release();
+        mImportExecutor.shutdownNow();
         stopMonitorLocation();
         super.onDestroy();
     }
@@ -80,6 +106,8 @@ public class HeadService extends Service {
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         LatLng mapLocation;
+        ArrayList<LatLng> mapRoute;
+        String mapPath;
         double mapRadius;
 
         if (intent != null) {
@@ -95,6 +123,24 @@ public class HeadService extends Service {
                                     mUIController.sendMessage("Navigation Done!"));
                         }
                         break;
+                    case ACTION_HANDLE_ROUTE:
+                        mapRoute = intent.getParcelableArrayListExtra(EXTRA_DATA);
+                        if (mapRoute != null && !mapRoute.isEmpty()) {
+                            Log.d(TAG, "Service receive route of " + mapRoute.size() + " points");
+                            mUIController.sendMessage(mContext.getString(R.string.msg_map_navigating));
+                            mIntentLocationManager.navigateRoute(mapRoute, () ->
+                                    mUIController.sendMessage("Navigation Done!"));
+                        }
+                        break;
+                    case ACTION_HANDLE_TRACK:
+                        if (intent.getData() != null)
+                            navigateTrack(intent.getData());
+                        break;
+                    case ACTION_HANDLE_PLAYBACK:
+                        // a recording file or segment directory, the app's own recording by default
+                        mapPath = intent.getStringExtra(EXTRA_DATA);
+                        playRecording(mapPath != null ? new File(mapPath) : new File(getFilesDir(), "tracks"));
+                        break;
                     case ACTION_HANDLE_TELEPORT:
                         mapLocation = intent.getParcelableExtra(EXTRA_DATA);
                         if (mapLocation != null) {
@@ -108,6 +154,7 @@ public class HeadService extends Service {
                         if (mapRadius > 0) {
                             Log.d(TAG, "Service receive Radius = " + mapRadius);
                             mUIController.sendMessage(mContext.getString(R.string.msg_map_shu));
+                            mIntentLocationManager.startIncubating(mapRadius);
                         }
                         break;
                 }
@@ -116,7 +163,96 @@ public class HeadService extends Service {
         return START_NOT_STICKY;
     }
 
+    /*
+     * The track file is mapped rather than read, the mapping stays valid after
+     * the descriptor is closed. Parsing a large track takes a while, so it runs
+     * on the import executor and only the result comes back to the main thread.
+     * Recordings of this app play back with their timing, anything else is
+     * imported as a route.
+     */
+    private void navigateTrack(Uri uri) {
+        mImportExecutor.execute(() -> {
+            PlaybackSource recording = null;
+            Track track = null;
+            try (ParcelFileDescriptor pfd = getContentResolver().openFileDescriptor(uri, "r")) {
+                if (pfd == null)
+                    throw new IOException("no file descriptor");
+                try (FileInputStream stream = new FileInputStream(pfd.getFileDescriptor())) {
+                    FileChannel channel = stream.getChannel();
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    if (Recordings.isRecording(buffer))
+                        recording = Recordings.open(buffer);
+                    else
+                        track = TrackImporter.parse(buffer);
+                }
+            } catch (IOException | IllegalArgumentException | SecurityException e) {
+                Log.e(TAG, "Cannot import track " + uri + ": " + e.getMessage());
+            }
+
+            final PlaybackSource importedRecording = recording;
+            final Track importedTrack = track;
+            mHandler.post(() -> onTrackImported(importedTrack, importedRecording));
+        });
+    }
+
+    private void onTrackImported(Track track, PlaybackSource recording) {
+        // the service went away while the file was parsed
+        if (mImportExecutor.isShutdown())
+            return;
+
+        if (recording != null) {
+            startPlayback(recording);
+            return;
+        }
+        if (track == null || track.isEmpty()) {
+            mUIController.sendMessage(mContext.getString(R.string.msg_map_track_invalid));
+            return;
+        }
+        Log.d(TAG, "Service receive track of " + track.size() + " points");
+        mUIController.sendMessage(mContext.getString(R.string.msg_map_navigating));
+        mIntentLocationManager.navigateTrack(track, () ->
+                mUIController.sendMessage("Navigation Done!"));
+    }
+
+    /*
+     * Opening maps the file and looks through a fix log for its providers, so
+     * it runs on the import executor like track imports
+     */
+    private void playRecording(File file) {
+        mImportExecutor.execute(() -> {
+            PlaybackSource recording = null;
+            try {
+                recording = Recordings.open(file);
+            } catch (IOException | IllegalArgumentException e) {
+                Log.e(TAG, "Cannot play back " + file + ": " + e.getMessage());
+            }
+
+            final PlaybackSource openedRecording = recording;
+            mHandler.post(() -> onRecordingOpened(openedRecording));
+        });
+    }
+
+    private void onRecordingOpened(PlaybackSource recording) {
+        // the service went away while the file was opened
+        if (mImportExecutor.isShutdown())
+            return;
+
+        if (recording != null)
+            startPlayback(recording);
+        else
+            mUIController.sendMessage(mContext.getString(R.string.msg_map_recording_invalid));
+    }
+
+    private void startPlayback(PlaybackSource source) {
+        Log.d(TAG, "Service receive a recording to play back");
+        mUIController.sendMessage(mContext.getString(R.string.msg_map_playing_back));
+        mIntentLocationManager.startPlayback(source, () ->
+                mUIController.sendMessage("Playback Done!"));
+    }
+
     private void initOnce() {
+        // deadlines on the same clock as the engine, which keeps counting in deep sleep
+        TickScheduler.setDefaultClock(SystemClock::elapsedRealtimeNanos);
         mIntentLocationManager = new IntentLocationManager(mContext);
         mUIController = new TopUIController(mContext, this, mHandler, mIntentLocationManager);
         mUIController.initOnce();
@@ -161,23 +297,25 @@ public class HeadService extends Service {
             lastCbString += ", FUS cb: " + (mRealLocationTracker.getLastFusedLocationCallbackTimeMs()/1000) + " s ago";
         }
 
+        double coverage = mIntentLocationManager.getIncubatingCoverage();
+        if (coverage >= 0)
+            lastCbString += "\nCoverage: " + (int) (coverage * 100) + "%";
+
         mUIController.sendMessage(gpsString + "\n" + fusedString + "\n" + lastCbString);
-        if (mMonitorLocationFlag)
-            startMonitorLocation();
     }
 
     private void startMonitorLocation() {
-        mMonitorLocationFlag = true;
-        mHandler.postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                monitorWorkFunc();
-            }
-        }, 500);
+        stopMonitorLocation();
+        // the work touches views, so the tick only hops onto the main looper
+        mMonitorTask = TickScheduler.get().schedule("LocationMonitor",
+                () -> mHandler.post(this::monitorWorkFunc), MONITOR_INTERVAL_MS, MONITOR_INTERVAL_MS);
     }
 
     private void stopMonitorLocation() {
-        mMonitorLocationFlag = false;
+        if (mMonitorTask != null) {
+            mMonitorTask.cancel();
+            mMonitorTask = null;
+        }
     }
 
     private void initNotification() {
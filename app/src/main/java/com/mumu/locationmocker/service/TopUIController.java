@@ -37,6 +37,8 @@ import android.widget.ScrollView;
 import com.mumu.locationmocker.MapLocationViewer;
 import com.mumu.locationmocker.R;
 import com.mumu.locationmocker.location.IntentLocationManager;
+import com.mumu.locationmocker.scheduler.TickScheduler;
+import com.mumu.locationmocker.scheduler.TickTask;
 
 public class TopUIController {
     private static final String TAG = "TopUI";
@@ -67,7 +69,7 @@ public class TopUIController {
     private static final int mMessageLastTimeMs = 3000;
     private String mMessageText = "";
     private long mMessageTimestamp = -1;
-    private boolean mMessageThreadRunning = false;
+    private TickTask mMessageTask;
     private int mCurrentIconModeState = EXECUTION_MODE_NORMAL;
     private int mLastIconModeState = 0;
     private int mMainLayoutPositionIndex = 0;
@@ -106,7 +108,10 @@ public class TopUIController {
     }
 
     public void destroy() {
-        mMessageThreadRunning = false;
+        if (mMessageTask != null) {
+            mMessageTask.cancel();
+            mMessageTask = null;
+        }
         if (mWindowManager != null && mMainLayout != null) {
             mWindowManager.removeView(mMainLayout);
         }
@@ -333,8 +338,8 @@ public class TopUIController {
     }
 
     private void initThreads() {
-        mMessageThreadRunning = true;
-        new GetMessageThread().start();
+        mMessageTask = TickScheduler.get().schedule("TopUIMessage",
+                this::checkMessageTimeout, 0, mUpdateUIInterval);
     }
 
     /*
@@ -442,24 +447,15 @@ public class TopUIController {
         mMainLayout.setBackgroundResource(R.drawable.rounded_bg_layout);
     }
 
-    private class GetMessageThread extends Thread {
-        public void run() {
-            while(mMessageThreadRunning) {
-                long currentTimestamp = System.currentTimeMillis();
-                if (currentTimestamp - mMessageTimestamp > mMessageLastTimeMs) {
-                    mHandler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            updateLogMessage("");
-                        }
-                    });
+    private void checkMessageTimeout() {
+        long currentTimestamp = System.currentTimeMillis();
+        if (currentTimestamp - mMessageTimestamp > mMessageLastTimeMs) {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    updateLogMessage("");
                 }
-                try {
-                    Thread.sleep(mUpdateUIInterval);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
+            });
         }
     }
 }
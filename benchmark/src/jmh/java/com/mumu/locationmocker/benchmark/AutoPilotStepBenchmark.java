@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.benchmark;
+
+import com.mumu.locationmocker.engine.LocationEngine;
+import com.mumu.locationmocker.scheduler.TickScheduler;
+import com.mumu.locationmocker.scheduler.VirtualClock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * One auto pilot tick of the engine: timeline lookup, random shift and the
+ * hand off to the sink, which on device is the broadcast. The scheduler is
+ * virtual and never advanced, so the engine's own AutoPilot task never runs
+ * next to the measured step.
+ */
+@State(Scope.Thread)
+public class AutoPilotStepBenchmark {
+    private static final long TICK_NANOS = 100000L;
+    private static final double TARGET_LAT = 35.6812;
+    private static final double TARGET_LNG = 139.7671;
+    @Param("42")
+    public long seed;
+
+    private TickScheduler scheduler;
+    private LocationEngine engine;
+    private long now;
+
+    @Setup
+    public void setup(Blackhole bh) {
+        scheduler = new TickScheduler(new VirtualClock());
+        engine = new LocationEngine((lat, lng, alt, acc, bear, spd) -> {
+            bh.consume(lat);
+            bh.consume(lng);
+        }, () -> now, scheduler, seed);
+        engine.navigateTo(TARGET_LAT, TARGET_LNG, false, null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.release();
+        scheduler.shutdown();
+    }
+
+    @Benchmark
+    public void step() {
+        now += TICK_NANOS;
+        if (!engine.navigationStep())
+            engine.navigateTo(TARGET_LAT, TARGET_LNG, false, null);
+    }
+}
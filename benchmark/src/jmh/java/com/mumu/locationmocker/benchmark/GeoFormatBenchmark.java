@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.benchmark;
+
+import com.mumu.locationmocker.geo.GeoFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * Coordinate formatting behind RealLocationTracker.getLocationString, which the
+ * overlay monitor calls twice per refresh
+ */
+@State(Scope.Thread)
+public class GeoFormatBenchmark {
+    private double lat = 25.0335123;
+    private double lng = 121.5642456;
+
+    @Benchmark
+    public String formatLatLng() {
+        return GeoFormat.formatLatLng(lat, lng);
+    }
+}
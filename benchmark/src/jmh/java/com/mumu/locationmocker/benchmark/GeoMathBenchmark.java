@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.benchmark;
+
+import com.mumu.locationmocker.geo.GeoMath;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * Per tick distance and bearing math, one short hop near Taipei 101
+ */
+@State(Scope.Thread)
+public class GeoMathBenchmark {
+    private double lat1 = 25.0335;
+    private double lng1 = 121.5642;
+    private double lat2 = 25.03352;
+    private double lng2 = 121.56423;
+    private final double[] out = new double[2];
+
+    @Benchmark
+    public double haversine() {
+        return GeoMath.haversine(lat1, lng1, lat2, lng2);
+    }
+
+    @Benchmark
+    public double vincenty() {
+        return GeoMath.vincenty(lat1, lng1, lat2, lng2);
+    }
+
+    @Benchmark
+    public double equirectangular() {
+        return GeoMath.equirectangular(lat1, lng1, lat2, lng2);
+    }
+
+    @Benchmark
+    public double initialBearing() {
+        return GeoMath.initialBearing(lat1, lng1, lat2, lng2);
+    }
+
+    @Benchmark
+    public double[] destination() {
+        GeoMath.destination(lat1, lng1, 45.0, 2.5, out, 0);
+        return out;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.benchmark;
+
+import com.mumu.locationmocker.engine.HumanWalkSimulator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class HumanWalkSimulatorBenchmark {
+    @Param("42")
+    public long seed;
+
+    private HumanWalkSimulator simulator;
+
+    @Setup
+    public void setup() {
+        simulator = new HumanWalkSimulator(seed);
+    }
+
+    @Benchmark
+    public int getNextDirection() {
+        return simulator.getNextDirection();
+    }
+}
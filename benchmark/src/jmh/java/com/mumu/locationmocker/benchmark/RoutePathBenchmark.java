@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.benchmark;
+
+import com.mumu.locationmocker.engine.RoutePath;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * Route lookups per tick, a two point hop against long zig-zag routes
+ */
+@State(Scope.Thread)
+public class RoutePathBenchmark {
+    @Param({"2", "1000", "50000"})
+    public int waypoints;
+
+    private RoutePath route;
+    private double distance;
+    private final double[] out = new double[2];
+
+    @Setup
+    public void setup() {
+        double[] lats = new double[waypoints];
+        double[] lngs = new double[waypoints];
+        for (int i = 0; i < waypoints; i++) {
+            lats[i] = 25.0 + (i % 2) * 0.001;
+            lngs[i] = 121.0 + i * 0.001;
+        }
+        route = new RoutePath(lats, lngs);
+    }
+
+    @Benchmark
+    public double[] positionAt() {
+        distance += 3.3;
+        if (distance > route.getLength())
+            distance = 0;
+        route.positionAt(distance, out, 0);
+        return out;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.benchmark;
+
+import com.mumu.locationmocker.track.Track;
+import com.mumu.locationmocker.track.TrackImporter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Importing a GPX track from an off-heap buffer, the same as a mapped file,
+ * 100k points is a file of about 8 MB
+ */
+@State(Scope.Thread)
+public class TrackImporterBenchmark {
+    @Param({"1000", "100000"})
+    public int points;
+
+    private ByteBuffer gpx;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<gpx version=\"1.1\" creator=\"benchmark\"><trk><trkseg>\n");
+        for (int i = 0; i < points; i++) {
+            sb.append("<trkpt lat=\"").append(25.0 + i * 0.0000123).append("\" lon=\"")
+                    .append(121.0 + (i % 97) * 0.0000311).append("\"><ele>12.5</ele>")
+                    .append("<time>2024-01-01T00:00:00Z</time></trkpt>\n");
+        }
+        sb.append("</trkseg></trk></gpx>\n");
+
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        gpx = ByteBuffer.allocateDirect(bytes.length);
+        gpx.put(bytes).flip();
+    }
+
+    @Benchmark
+    public Track parseGpx() {
+        return TrackImporter.parse(gpx);
+    }
+}
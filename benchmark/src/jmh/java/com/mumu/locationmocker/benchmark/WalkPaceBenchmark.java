@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.benchmark;
+
+import com.mumu.locationmocker.engine.LocationEngine;
+import com.mumu.locationmocker.engine.WalkDirection;
+import com.mumu.locationmocker.scheduler.SimClock;
+import com.mumu.locationmocker.scheduler.TickScheduler;
+import com.mumu.locationmocker.scheduler.VirtualClock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * Joystick and compass walking, the path of every manual move
+ */
+@State(Scope.Thread)
+public class WalkPaceBenchmark {
+    @Param("42")
+    public long seed;
+
+    private TickScheduler scheduler;
+    private LocationEngine engine;
+    private int direction;
+
+    @Setup
+    public void setup(Blackhole bh) {
+        scheduler = new TickScheduler(new VirtualClock());
+        engine = new LocationEngine((lat, lng, alt, acc, bear, spd) -> {
+            bh.consume(lat);
+            bh.consume(lng);
+        }, SimClock.SYSTEM, scheduler, seed);
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Benchmark
+    public void walkPace() {
+        direction = (direction + 1) % WalkDirection.STAY;
+        engine.walkPace(direction, 0.8);
+    }
+
+    @Benchmark
+    public void walkJoystick() {
+        engine.walk(0.6, -0.8);
+    }
+
+    @Benchmark
+    public float controlRandomShift() {
+        engine.controlRandomShift();
+        return engine.getAccuracy();
+    }
+}
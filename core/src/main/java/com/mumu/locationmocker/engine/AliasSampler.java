@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.engine;
+
+import java.util.SplittableRandom;
+
+/*
+ * Alias Sampler
+ * Walker's alias method over a fixed number of outcomes. build() turns a list
+ * of weights into a probability and an alias per column in linear time, after
+ * that a sample costs one random number and no scan. Every table is allocated
+ * up front, building and sampling never allocate.
+ */
+final class AliasSampler {
+    private final int mSize;
+    private final double[] mProbability;
+    private final int[] mAlias;
+    private final double[] mScaled;
+    private final int[] mSmall;
+    private final int[] mLarge;
+
+    AliasSampler(int size) {
+        mSize = size;
+        mProbability = new double[size];
+        mAlias = new int[size];
+        mScaled = new double[size];
+        mSmall = new int[size];
+        mLarge = new int[size];
+    }
+
+    /*
+     * Weights do not have to add up to 1, they are normalized here
+     */
+    void build(double[] weights) {
+        double total = 0;
+        for (int i = 0; i < mSize; i++)
+            total += weights[i];
+
+        int small = 0;
+        int large = 0;
+        for (int i = 0; i < mSize; i++) {
+            mScaled[i] = total > 0 ? weights[i] * mSize / total : 1.0;
+            if (mScaled[i] < 1.0)
+                mSmall[small++] = i;
+            else
+                mLarge[large++] = i;
+        }
+
+        while (small > 0 && large > 0) {
+            int less = mSmall[--small];
+            int more = mLarge[--large];
+            mProbability[less] = mScaled[less];
+            mAlias[less] = more;
+            mScaled[more] = mScaled[more] + mScaled[less] - 1.0;
+            if (mScaled[more] < 1.0)
+                mSmall[small++] = more;
+            else
+                mLarge[large++] = more;
+        }
+
+        // whatever is left is 1 up to rounding
+        while (large > 0) {
+            int i = mLarge[--large];
+            mProbability[i] = 1.0;
+            mAlias[i] = i;
+        }
+        while (small > 0) {
+            int i = mSmall[--small];
+            mProbability[i] = 1.0;
+            mAlias[i] = i;
+        }
+    }
+
+    int sample(SplittableRandom random) {
+        double u = random.nextDouble() * mSize;
+        int column = (int) u;
+        return u - column < mProbability[column] ? column : mAlias[column];
+    }
+}
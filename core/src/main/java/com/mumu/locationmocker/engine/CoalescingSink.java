@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.engine;
+
+import java.util.concurrent.Executor;
+
+/*
+ * Coalescing Sink
+ * A single slot, latest wins mailbox in front of a slow sink. Producers only
+ * overwrite the slot and never wait for the downstream sink. The executor
+ * drains the slot, so a burst of updates that arrives while a delivery is in
+ * flight collapses into one delivery of the newest position.
+ */
+public class CoalescingSink implements LocationSink {
+    private final LocationSink mDownstream;
+    private final Executor mExecutor;
+    private final Runnable mDrain = this::drain;
+
+    // guarded by this
+    private double mLat, mLng, mAlt;
+    private float mAccuracy, mBearing, mSpeed;
+    private boolean mPending = false;
+    private boolean mScheduled = false;
+    private long mOffered = 0;
+    private long mDelivered = 0;
+
+    public CoalescingSink(LocationSink downstream, Executor executor) {
+        mDownstream = downstream;
+        mExecutor = executor;
+    }
+
+    @Override
+    public void onLocation(double lat, double lng, double alt, float accuracy, float bearing, float speed) {
+        boolean schedule;
+        synchronized (this) {
+            mLat = lat;
+            mLng = lng;
+            mAlt = alt;
+            mAccuracy = accuracy;
+            mBearing = bearing;
+            mSpeed = speed;
+            mPending = true;
+            mOffered++;
+            schedule = !mScheduled;
+            mScheduled = true;
+        }
+        if (schedule)
+            mExecutor.execute(mDrain);
+    }
+
+    private void drain() {
+        double lat, lng, alt;
+        float accuracy, bearing, speed;
+
+        while (true) {
+            synchronized (this) {
+                if (!mPending) {
+                    mScheduled = false;
+                    return;
+                }
+                lat = mLat;
+                lng = mLng;
+                alt = mAlt;
+                accuracy = mAccuracy;
+                bearing = mBearing;
+                speed = mSpeed;
+                mPending = false;
+                mDelivered++;
+            }
+            mDownstream.onLocation(lat, lng, alt, accuracy, bearing, speed);
+        }
+    }
+
+    public synchronized long getOfferedCount() {
+        return mOffered;
+    }
+
+    public synchronized long getDeliveredCount() {
+        return mDelivered;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.engine;
+
+import com.mumu.locationmocker.geo.LocalFence;
+
+/*
+ * Coverage Grid
+ * Splits the square around a LocalFence into GRID_SIZE x GRID_SIZE cells and
+ * remembers the visited ones in a bitset, so its memory stays the same no
+ * matter how long a session walks. Only cells whose center lies inside the
+ * circle count toward the coverage.
+ */
+public class CoverageGrid {
+    public static final int GRID_SIZE = 64;
+
+    // neighbor offsets in WalkDirection order, columns grow east and rows grow north
+    private static final int[] DIRECTION_COLUMN = {0, 0, -1, 1, -1, -1, 1, 1};
+    private static final int[] DIRECTION_ROW = {1, -1, 0, 0, 1, -1, -1, 1};
+
+    private final LocalFence mFence;
+    private final double mCellSize;
+    private final long[] mVisited = new long[GRID_SIZE * GRID_SIZE / 64];
+    private final long[] mInside = new long[GRID_SIZE * GRID_SIZE / 64];
+    private final int mInsideCount;
+    private volatile int mVisitedCount = 0;
+
+    public CoverageGrid(LocalFence fence) {
+        mFence = fence;
+        mCellSize = 2 * fence.getRadius() / GRID_SIZE;
+
+        int inside = 0;
+        double radiusSquared = fence.getRadius() * fence.getRadius();
+        for (int row = 0; row < GRID_SIZE; row++) {
+            for (int column = 0; column < GRID_SIZE; column++) {
+                double east = (column + 0.5) * mCellSize - fence.getRadius();
+                double north = (row + 0.5) * mCellSize - fence.getRadius();
+                if (east * east + north * north <= radiusSquared) {
+                    set(mInside, row * GRID_SIZE + column);
+                    inside++;
+                }
+            }
+        }
+        mInsideCount = inside;
+    }
+
+    public double getCellSize() {
+        return mCellSize;
+    }
+
+    /*
+     * Index of the cell that holds lat, lng or -1 if it is outside the grid
+     */
+    public int cellOf(double lat, double lng) {
+        int column = (int) Math.floor((mFence.eastOf(lng) + mFence.getRadius()) / mCellSize);
+        int row = (int) Math.floor((mFence.northOf(lat) + mFence.getRadius()) / mCellSize);
+        return cellAt(column, row);
+    }
+
+    /*
+     * Mark the cell of lat, lng as visited, returns true the first time
+     */
+    public boolean visit(double lat, double lng) {
+        int cell = cellOf(lat, lng);
+        if (cell < 0 || !get(mInside, cell) || get(mVisited, cell))
+            return false;
+        set(mVisited, cell);
+        mVisitedCount++;
+        return true;
+    }
+
+    public boolean isVisited(int cell) {
+        return cell >= 0 && get(mVisited, cell);
+    }
+
+    /*
+     * An inside cell that has not been visited yet
+     */
+    public boolean isOpen(int cell) {
+        return cell >= 0 && get(mInside, cell) && !get(mVisited, cell);
+    }
+
+    /*
+     * The neighbor cell of cell that lies toward a WalkDirection, -1 if that is
+     * off the grid or the direction is STAY
+     */
+    public int neighbor(int cell, int direction) {
+        if (cell < 0 || direction < 0 || direction >= DIRECTION_COLUMN.length)
+            return -1;
+        return cellAt(cell % GRID_SIZE + DIRECTION_COLUMN[direction],
+                cell / GRID_SIZE + DIRECTION_ROW[direction]);
+    }
+
+    public int getVisitedCount() {
+        return mVisitedCount;
+    }
+
+    /*
+     * Share of the cells inside the circle that have been visited, 0.0 ~ 1.0
+     */
+    public double getCoverage() {
+        return mInsideCount > 0 ? (double) mVisitedCount / mInsideCount : 0.0;
+    }
+
+    private static int cellAt(int column, int row) {
+        if (column < 0 || column >= GRID_SIZE || row < 0 || row >= GRID_SIZE)
+            return -1;
+        return row * GRID_SIZE + column;
+    }
+
+    private static boolean get(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private static void set(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.engine;
+
+import com.mumu.locationmocker.geo.GeoMath;
+
+/*
+ * Great Circle Path
+ * The great circle from start to target. It is set up once as the start point
+ * and the unit tangent toward the target on the unit sphere, so a point at
+ * some arc length is start * cos + tangent * sin of the arc angle.
+ */
+public class GreatCirclePath implements PilotPath {
+    private final double mStartX;
+    private final double mStartY;
+    private final double mStartZ;
+    private final double mTangentX;
+    private final double mTangentY;
+    private final double mTangentZ;
+    private final double mToLat;
+    private final double mToLng;
+    private final double mLength;
+
+    public GreatCirclePath(double fromLat, double fromLng, double toLat, double toLng) {
+        double phi1 = Math.toRadians(fromLat), lambda1 = Math.toRadians(fromLng);
+        double phi2 = Math.toRadians(toLat), lambda2 = Math.toRadians(toLng);
+        double ax = Math.cos(phi1) * Math.cos(lambda1);
+        double ay = Math.cos(phi1) * Math.sin(lambda1);
+        double az = Math.sin(phi1);
+        double bx = Math.cos(phi2) * Math.cos(lambda2);
+        double by = Math.cos(phi2) * Math.sin(lambda2);
+        double bz = Math.sin(phi2);
+
+        // angle between the two points, atan2 keeps it accurate for short and long routes
+        double cx = ay * bz - az * by;
+        double cy = az * bx - ax * bz;
+        double cz = ax * by - ay * bx;
+        double cosAngle = ax * bx + ay * by + az * bz;
+        double angle = Math.atan2(Math.sqrt(cx * cx + cy * cy + cz * cz), cosAngle);
+
+        // tangent is the part of the target perpendicular to the start
+        double tx = bx - ax * cosAngle;
+        double ty = by - ay * cosAngle;
+        double tz = bz - az * cosAngle;
+        double norm = Math.sqrt(tx * tx + ty * ty + tz * tz);
+        if (norm < 1e-15) {
+            // no route or an antipode, any direction will do so head north
+            tx = -az * Math.cos(lambda1);
+            ty = -az * Math.sin(lambda1);
+            tz = Math.cos(phi1);
+            norm = Math.sqrt(tx * tx + ty * ty + tz * tz);
+        }
+
+        mStartX = ax;
+        mStartY = ay;
+        mStartZ = az;
+        mTangentX = tx / norm;
+        mTangentY = ty / norm;
+        mTangentZ = tz / norm;
+        mToLat = toLat;
+        mToLng = toLng;
+        mLength = angle * GeoMath.EARTH_RADIUS;
+    }
+
+    @Override
+    public double getLength() {
+        return mLength;
+    }
+
+    /*
+     * The end of the path is the target exactly
+     */
+    @Override
+    public void positionAt(double distance, double[] out, int offset) {
+        if (distance >= mLength) {
+            out[offset] = mToLat;
+            out[offset + 1] = mToLng;
+            return;
+        }
+
+        double angle = distance / GeoMath.EARTH_RADIUS;
+        double cos = Math.cos(angle), sin = Math.sin(angle);
+        double x = mStartX * cos + mTangentX * sin;
+        double y = mStartY * cos + mTangentY * sin;
+        double z = mStartZ * cos + mTangentZ * sin;
+        out[offset] = Math.toDegrees(Math.atan2(z, Math.sqrt(x * x + y * y)));
+        out[offset + 1] = Math.toDegrees(Math.atan2(y, x));
+    }
+}
@@ -14,17 +14,19 @@
  * limitations under the License.
  */
 
-package com.mumu.locationmocker.location;
+package com.mumu.locationmocker.engine;
 
-import android.util.Log;
+import java.util.SplittableRandom;
 
 /*
  * Human Walk Simulator
  * When we walk on the street, we don't usually walk back and front and we tend
  * to walk in the same direction for a while.
+ *
+ * Directions are drawn from an alias table that is only rebuilt when the
+ * possibilities change, each simulator has a generator of its own.
  */
 public class HumanWalkSimulator {
-    private static final String TAG = "PokemonGoGo";
     private static final int MAX_DIR_COUNT = 150;
     private static final double MAX_POSSIBILITY = 0.92;
     private static final double STAY_POSSIBILITY = 0.1; // 10% chance that we stay for 1 second
@@ -33,14 +35,25 @@ public class HumanWalkSimulator {
     public static final int POLICY_RANDOM = 1;
     public static final int POLICY_CONSTANT = 2;
 
-    private int mCurrentDirection = FakeLocation.STAY;
+    private int mCurrentDirection = WalkDirection.STAY;
     private int mCurrentCount = 0;
-    private final int[] mPossibilityEntry = {FakeLocation.NORTH, FakeLocation.SOUTH,
-            FakeLocation.WEST, FakeLocation.EAST};
     private double[] mPossibilityList = new double[8];
-    private double[] mPossibilityStay = new double[2];
+    private final AliasSampler mDirectionSampler = new AliasSampler(8);
+    private final SplittableRandom mRandom;
 
     public HumanWalkSimulator() {
+        this(new SplittableRandom());
+    }
+
+    /*
+     * The same seed always gives the same sequence of directions
+     */
+    public HumanWalkSimulator(long seed) {
+        this(new SplittableRandom(seed));
+    }
+
+    private HumanWalkSimulator(SplittableRandom random) {
+        mRandom = random;
         resetSimulator();
     }
 
@@ -60,9 +73,7 @@ public class HumanWalkSimulator {
         mPossibilityList[5] = 0.125;
         mPossibilityList[6] = 0.125;
         mPossibilityList[7] = 0.125;
-
-        mPossibilityStay[0] = 1 - STAY_POSSIBILITY; // index 0 also says NO
-        mPossibilityStay[1] = STAY_POSSIBILITY;
+        mDirectionSampler.build(mPossibilityList);
     }
 
     /*
@@ -70,11 +81,11 @@ public class HumanWalkSimulator {
      * the possibility gets smaller when the mCurrentCount gets bigger
      */
     private int generateNewList() {
-        int roll = rollTheDice(mPossibilityList);
-        int shouldStay = rollTheDice(mPossibilityStay);
+        int roll = mDirectionSampler.sample(mRandom);
+        boolean shouldStay = mRandom.nextDouble() < STAY_POSSIBILITY;
 
-        if (shouldStay == 1) {
-            return FakeLocation.STAY;
+        if (shouldStay) {
+            return WalkDirection.STAY;
         }
 
         if (roll != mCurrentDirection) {
@@ -91,43 +102,28 @@ public class HumanWalkSimulator {
         return mCurrentDirection;
     }
 
-    private int rollTheDice(double[] list) {
-        double random_seed = Math.random();
-        double increment = 0;
-
-        if (list.length < 2) {
-            return 0;
-        }
-
-        for(int i = 0; i < list.length; i++) {
-            increment += list[i];
-            if (random_seed < increment) {
-                return i;
-            }
-        }
-
-        return list.length - 1;
-    }
-
     private void setPossibility(double[] list, int index, double value, int policy) {
         switch (policy) {
             case POLICY_AVERAGE:
                 setPossibilityAverage(list, index, value);
+                mDirectionSampler.build(list);
                 break;
             case POLICY_RANDOM:
                 break;
             case POLICY_CONSTANT:
                 setPossibilityConstant(list, index, value);
+                mDirectionSampler.build(list);
                 break;
             default:
-                Log.w(TAG, "Set possibility with unrecognized policy");
+                break;
         }
     }
 
+    /*
+     * An out of range value leaves the list untouched
+     */
     private void setPossibilityAverage(double[] list, int index, double value) {
-        if (value < 0.0 || value > 1.0) {
-            Log.e(TAG, "Set possibility of " + mPossibilityEntry[index] + " to " + value + " is not valid.");
-        } else {
+        if (value >= 0.0 && value <= 1.0) {
             double last_possibility = 1 - value;
             double old_bottom_value = 1 - list[index];
             for(int i = 0; i < list.length; i++) {
@@ -138,14 +134,10 @@ public class HumanWalkSimulator {
                 }
             }
         }
-        Log.d(TAG, "After change: ");
-        printList(list);
     }
 
     private void setPossibilityConstant(double[] list, int index, double value) {
-        if (value < 0.0 || value > 1.0) {
-            Log.e(TAG, "Set possibility of " + mPossibilityEntry[index] + " to " + value + " is not valid.");
-        } else {
+        if (value >= 0.0 && value <= 1.0) {
             double last_possibility = 1 - value;
             for(int i = 0; i < list.length; i++) {
                 if (i == index) {
@@ -155,12 +147,5 @@ public class HumanWalkSimulator {
                 }
             }
         }
-        Log.d(TAG, "After change: ");
-        printList(list);
-    }
-
-    private void printList(double[] list) {
-        for (int i = 0; i < list.length; i++)
-            Log.d(TAG, "  [" + i + "] = " + list[i]);
     }
 }
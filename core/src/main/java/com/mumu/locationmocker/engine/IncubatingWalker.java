@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.engine;
+
+import com.mumu.locationmocker.geo.LocalFence;
+
+/*
+ * Incubating Walker
+ * Wanders inside a LocalFence the way HumanWalkSimulator walks. Inside the
+ * inner part of the circle the simulator alone picks the direction. Past
+ * STEER_START of the radius the step is blended toward the center, the
+ * further out the stronger, so the walker curves back instead of turning
+ * around. At the boundary it heads straight for the center.
+ *
+ * With a CoverageGrid the walker also prefers cells it has not been to. It
+ * looks up to LOOK_AHEAD cells along each direction and takes the one with
+ * the nearest unvisited cell, ties go to the direction closest in angle to the
+ * one the simulator picked. While it heads for such a cell it is only steered
+ * back once it crosses the boundary.
+ */
+public class IncubatingWalker {
+    private static final double STEER_START = 0.7;
+    private static final int LOOK_AHEAD = 8;
+    private static final double D = Math.sqrt(0.5);
+
+    // unit vectors of the WalkDirection values, x points east and y points north
+    private static final double[] DIRECTION_X = {0, 0, -1, 1, -D, -D, D, D, 0};
+    private static final double[] DIRECTION_Y = {1, -1, 0, 0, D, -D, -D, D, 0};
+
+    private final LocalFence mFence;
+    private final HumanWalkSimulator mSimulator;
+    private final CoverageGrid mCoverage;
+    private final double mSteerStartSquared;
+    private final double mRadiusSquared;
+    private boolean mHasTarget = false;
+
+    public IncubatingWalker(LocalFence fence, HumanWalkSimulator simulator) {
+        this(fence, simulator, null);
+    }
+
+    public IncubatingWalker(LocalFence fence, HumanWalkSimulator simulator, CoverageGrid coverage) {
+        mFence = fence;
+        mSimulator = simulator;
+        mCoverage = coverage;
+        mRadiusSquared = fence.getRadius() * fence.getRadius();
+        mSteerStartSquared = STEER_START * STEER_START * mRadiusSquared;
+    }
+
+    public LocalFence getFence() {
+        return mFence;
+    }
+
+    public CoverageGrid getCoverage() {
+        return mCoverage;
+    }
+
+    /*
+     * Write the unit vector of the next step from lat, lng into out[0] (east)
+     * and out[1] (north). Returns false if the walker stays this time.
+     */
+    public boolean nextStep(double lat, double lng, double[] out) {
+        int direction = mSimulator.getNextDirection();
+        if (direction == WalkDirection.STAY)
+            return false;
+        mHasTarget = false;
+        if (mCoverage != null)
+            direction = preferUnvisited(lat, lng, direction);
+
+        double x = DIRECTION_X[direction];
+        double y = DIRECTION_Y[direction];
+        double east = mFence.eastOf(lng);
+        double north = mFence.northOf(lat);
+        double distanceSquared = east * east + north * north;
+
+        // a target cell is always inside the circle, only steer if we are not
+        if (distanceSquared > (mHasTarget ? mRadiusSquared : mSteerStartSquared)) {
+            double distance = Math.sqrt(distanceSquared);
+            double weight = Math.min(1.0, (distance / mFence.getRadius() - STEER_START) / (1.0 - STEER_START));
+            x = (1.0 - weight) * x - weight * east / distance;
+            y = (1.0 - weight) * y - weight * north / distance;
+
+            double norm = Math.sqrt(x * x + y * y);
+            if (norm < 1e-6) {
+                // heading straight out at half weight cancels out, go home
+                x = -east / distance;
+                y = -north / distance;
+            } else {
+                x /= norm;
+                y /= norm;
+            }
+        }
+
+        out[0] = x;
+        out[1] = y;
+        return true;
+    }
+
+    private int preferUnvisited(double lat, double lng, int direction) {
+        mCoverage.visit(lat, lng);
+        int cell = mCoverage.cellOf(lat, lng);
+        if (cell < 0)
+            return direction;
+
+        int best = direction;
+        int bestReach = openCellDistance(cell, direction);
+        double bestDot = 1.0;
+        for (int candidate = 0; candidate < WalkDirection.STAY; candidate++) {
+            int reach = openCellDistance(cell, candidate);
+            double dot = DIRECTION_X[candidate] * DIRECTION_X[direction] +
+                    DIRECTION_Y[candidate] * DIRECTION_Y[direction];
+            if (reach < bestReach || (reach == bestReach && dot > bestDot)) {
+                best = candidate;
+                bestReach = reach;
+                bestDot = dot;
+            }
+        }
+        mHasTarget = bestReach <= LOOK_AHEAD;
+        return best;
+    }
+
+    // how many cells along a direction the first unvisited cell is, LOOK_AHEAD + 1 if none
+    private int openCellDistance(int cell, int direction) {
+        for (int distance = 1; distance <= LOOK_AHEAD; distance++) {
+            cell = mCoverage.neighbor(cell, direction);
+            if (cell < 0)
+                break;
+            if (mCoverage.isOpen(cell))
+                return distance;
+        }
+        return LOOK_AHEAD + 1;
+    }
+}
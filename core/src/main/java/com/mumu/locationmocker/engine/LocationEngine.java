@@ -0,0 +1,582 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.engine;
+
+import com.mumu.locationmocker.geo.EnuFrame;
+import com.mumu.locationmocker.geo.GeoMath;
+import com.mumu.locationmocker.geo.LocalFence;
+import com.mumu.locationmocker.scheduler.SimClock;
+import com.mumu.locationmocker.scheduler.TickScheduler;
+import com.mumu.locationmocker.scheduler.TickTask;
+
+import java.util.SplittableRandom;
+
+/*
+ * Location Engine
+ * The simulation state machine behind every location manager of the app: the
+ * current position, the pace and its random shift, joystick and compass walking
+ * and the auto pilot. It knows nothing about Android, locations go out through
+ * a LocationSink and time comes from a SimClock.
+ *
+ * Navigation, incubating and playback of a recorded track are exclusive,
+ * starting one stops the others.
+ *
+ * Walking moves in meters on an EnuFrame. The PaceProfile decides how long a
+ * pace is, in degrees of latitude worth of meters at every latitude and in
+ * every direction, and how the pace and bearing jitter.
+ *
+ * Writers change the position under the engine lock and publish it as an
+ * immutable LocationSnapshot, readers only read that snapshot and never lock.
+ * The sink may be a binder call or a broadcast, so it is only called after the
+ * engine lock is released. Deliveries are serialized on their own lock and
+ * always send the latest snapshot, so the sink never sees the track go back.
+ *
+ * All randomness, the pace shift, accuracy and bearing jitter and the walk
+ * simulators created here, comes from one seedable generator. Two engines with
+ * the same seed, clock readings and inputs produce the same track.
+ */
+public class LocationEngine {
+    public static final long PILOT_INTERVAL_MS = 1000;
+    public static final long PLAYBACK_INTERVAL_MS = 100;
+
+    private static final float ACCURACY_MIN = 1.5f;
+    private static final float ACCURACY_MAX = 9.9f;
+    private static final float ACCURACY_RESET = 5.2f;
+
+    private final LocationSink mSink;
+    private final SimClock mClock;
+    private final TickScheduler mScheduler;
+    private final SplittableRandom mRandom;
+    private final Object mEmitLock = new Object();
+
+    // this is the location of Taipei 101, written under the lock only
+    private double mLat = 25.0335;
+    private double mLng = 121.5642;
+    private double mAlt = 10.2;
+    private float mAccuracy = 6.91f;
+    private float mBearing = 0.0f;
+    private float mSpeed = 0.3f;
+    private volatile LocationSnapshot mPosition =
+            new LocationSnapshot(mLat, mLng, mAlt, mAccuracy, mBearing, mSpeed);
+
+    private PaceProfile mProfile = PaceProfile.INTENT;
+    private double mPaceShift = mProfile.shiftDefault;
+    private volatile double mPaceSpeed = mProfile.defaultSpeed;
+
+    private PilotTimeline mPilotTimeline;
+    private TickTask mPilotTask;
+    private boolean mPilotInterruptible = true;
+    private OnNavigationCompleteListener mPilotListener;
+    private TickTask mRepeatTask;
+    private IncubatingWalker mIncubatingWalker;
+    private TickTask mIncubatingTask;
+    private PlaybackTimeline mPlayback;
+    private TickTask mPlaybackTask;
+    private OnNavigationCompleteListener mPlaybackListener;
+    private double mPlaybackSpeed = 1.0;
+    private final double[] mStepVector = new double[2];
+    private final double[] mPilotPosition = new double[2];
+    private final EnuFrame mFrame = new EnuFrame();
+
+    public LocationEngine(LocationSink sink, SimClock clock, TickScheduler scheduler) {
+        this(sink, clock, scheduler, new SplittableRandom());
+    }
+
+    public LocationEngine(LocationSink sink, SimClock clock, TickScheduler scheduler, long seed) {
+        this(sink, clock, scheduler, new SplittableRandom(seed));
+    }
+
+    private LocationEngine(LocationSink sink, SimClock clock, TickScheduler scheduler, SplittableRandom random) {
+        mSink = sink;
+        mClock = clock;
+        mScheduler = scheduler;
+        mRandom = random;
+    }
+
+    // Position
+    public synchronized void setPosition(double lat, double lng, double alt, float accuracy, float bearing,
+                                         float speed) {
+        mLat = lat;
+        mLng = lng;
+        mAlt = alt;
+        mAccuracy = accuracy;
+        mBearing = bearing;
+        mSpeed = speed;
+        publish();
+    }
+
+    public synchronized void setLatLng(double lat, double lng) {
+        mLat = lat;
+        mLng = lng;
+        publish();
+    }
+
+    /*
+     * The latest published position, read both coordinates from one snapshot
+     * instead of calling getLatitude() and getLongitude()
+     */
+    public LocationSnapshot getPosition() {
+        return mPosition;
+    }
+
+    public double getLatitude() {
+        return mPosition.latitude;
+    }
+
+    public double getLongitude() {
+        return mPosition.longitude;
+    }
+
+    public double getAltitude() {
+        return mPosition.altitude;
+    }
+
+    public float getAccuracy() {
+        return mPosition.accuracy;
+    }
+
+    public float getBearing() {
+        return mPosition.bearing;
+    }
+
+    public float getSpeed() {
+        return mPosition.speed;
+    }
+
+    public double getDistanceTo(double lat, double lng) {
+        LocationSnapshot position = mPosition;
+        return GeoMath.vincenty(position.latitude, position.longitude, lat, lng);
+    }
+
+    /*
+     * Deliver the current position to the sink, never call it holding the
+     * engine lock
+     */
+    public void emit() {
+        synchronized (mEmitLock) {
+            LocationSnapshot p = mPosition;
+            mSink.onLocation(p.latitude, p.longitude, p.altitude, p.accuracy, p.bearing, p.speed);
+        }
+    }
+
+    private void publish() {
+        mPosition = new LocationSnapshot(mLat, mLng, mAlt, mAccuracy, mBearing, mSpeed);
+    }
+
+    /*
+     * Emit the current position every intervalMs even if nothing moves,
+     * 0 stops repeating
+     */
+    public synchronized void setRepeatInterval(long intervalMs) {
+        if (mRepeatTask != null) {
+            mRepeatTask.cancel();
+            mRepeatTask = null;
+        }
+        if (intervalMs > 0)
+            mRepeatTask = mScheduler.schedule("LocationRepeat", this::emit, 0, intervalMs);
+    }
+
+    // Pace
+    /*
+     * Switch to another pace profile, the pace speed and shift go back to its
+     * defaults
+     */
+    public synchronized void setPaceProfile(PaceProfile profile) {
+        mProfile = profile;
+        mPaceShift = profile.shiftDefault;
+        setPaceSpeed(profile.defaultSpeed);
+    }
+
+    public synchronized PaceProfile getPaceProfile() {
+        return mProfile;
+    }
+
+    public void setPaceSpeed(double speed) {
+        mPaceSpeed = speed;
+        synchronized (this) {
+            if (mPilotTimeline != null)
+                mPilotTimeline.setRate(getPilotRate(), mClock.elapsedRealtimeNanos());
+        }
+    }
+
+    public double getPaceSpeed() {
+        return mPaceSpeed;
+    }
+
+    public synchronized void setPaceShift(double shift) {
+        mPaceShift = shift;
+    }
+
+    public synchronized void controlRandomShift() {
+        randomShift();
+        publish();
+    }
+
+    private void randomShift() {
+        // shift is controlled to be within -shiftBound ~ shiftBound
+        PaceProfile profile = mProfile;
+        double shift = (mRandom.nextDouble() - 0.5) * profile.shiftStep;
+        float accShift = (float) (mRandom.nextDouble() * 2 - 1);
+        mPaceShift = mPaceShift + shift;
+        mAccuracy += accShift;
+        if (profile.bearingJitter > 0) {
+            mBearing += (float) (mRandom.nextDouble() * profile.bearingJitter);
+            if (mBearing > profile.bearingJitter)
+                mBearing = 0;
+        }
+
+        if (mPaceShift > profile.shiftBound || mPaceShift < -profile.shiftBound)
+            mPaceShift = profile.shiftDefault;
+
+        if (mAccuracy > ACCURACY_MAX || mAccuracy < ACCURACY_MIN)
+            mAccuracy = ACCURACY_RESET;
+    }
+
+    // Walking
+    /*
+     * A walk simulator seeded from this engine, so a seeded engine also
+     * reproduces the directions it picks
+     */
+    public synchronized HumanWalkSimulator createWalkSimulator() {
+        return new HumanWalkSimulator(mRandom.nextLong());
+    }
+
+    /*
+     * Walk one pace along a joystick vector, x points east and y points north,
+     * both within -1.0 ~ 1.0
+     */
+    public void walk(double x, double y) {
+        synchronized (this) {
+            interruptNavigation();
+
+            // must introduce random variable
+            randomShift();
+
+            double nextPace = getPaceMeters();
+            moveMeters(nextPace * x, nextPace * y);
+            publish();
+        }
+        emit();
+    }
+
+    /*
+     * Walk one pace toward a WalkDirection, ratio (0.0 ~ 1.0) is how much of the
+     * pace goes along the direction for the four main directions
+     */
+    public void walkPace(int direction, double ratio) {
+        if (ratio > 1.0 || ratio < 0.0)
+            ratio = 1.0;
+
+        switch (direction) {
+            case WalkDirection.EAST:
+                walk(ratio, 1 - ratio);
+                break;
+            case WalkDirection.WEST:
+                walk(-ratio, -(1 - ratio));
+                break;
+            case WalkDirection.NORTH:
+                walk(1 - ratio, ratio);
+                break;
+            case WalkDirection.SOUTH:
+                walk(-(1 - ratio), -ratio);
+                break;
+            case WalkDirection.NORTHWEST:
+                walk(-0.5, 0.5);
+                break;
+            case WalkDirection.WESTSOUTH:
+                walk(-0.5, -0.5);
+                break;
+            case WalkDirection.SOUTHEAST:
+                walk(0.5, -0.5);
+                break;
+            case WalkDirection.EASTNORTH:
+                walk(0.5, 0.5);
+                break;
+            case WalkDirection.STAY:
+            default:
+                break;
+        }
+    }
+
+    /*
+     * This function check if current location is out of bound of give radius and origin
+     * returns currentDirection if not out of bound or it will return the opposite direction
+     */
+    public int getNewDirectionInBound(double originLat, double originLng, double radius, int currentDirection) {
+        LocationSnapshot p = mPosition;
+        if (GeoMath.vincenty(p.latitude, p.longitude, originLat, originLng) > radius) {
+            if ((p.latitude - originLat) > 0 && (p.longitude - originLng) > 0)
+                return WalkDirection.WESTSOUTH;
+
+            if ((p.latitude - originLat) > 0 && (p.longitude - originLng) < 0)
+                return WalkDirection.SOUTHEAST;
+
+            if ((p.latitude - originLat) < 0 && (p.longitude - originLng) > 0)
+                return WalkDirection.NORTHWEST;
+
+            if ((p.latitude - originLat) < 0 && (p.longitude - originLng) < 0)
+                return WalkDirection.EASTNORTH;
+        }
+        return currentDirection;
+    }
+
+    // Auto pilot
+    public synchronized void navigateTo(double lat, double lng, boolean interruptible,
+                                        OnNavigationCompleteListener listener) {
+        navigate(new GreatCirclePath(mLat, mLng, lat, lng), interruptible, listener);
+    }
+
+    /*
+     * Fly through every waypoint in order, starting from the current position
+     */
+    public synchronized void navigateRoute(double[] lats, double[] lngs, boolean interruptible,
+                                           OnNavigationCompleteListener listener) {
+        if (lats.length != lngs.length)
+            throw new IllegalArgumentException("A route needs matching latitudes and longitudes");
+
+        double[] routeLats = new double[lats.length + 1];
+        double[] routeLngs = new double[lngs.length + 1];
+        routeLats[0] = mLat;
+        routeLngs[0] = mLng;
+        System.arraycopy(lats, 0, routeLats, 1, lats.length);
+        System.arraycopy(lngs, 0, routeLngs, 1, lngs.length);
+        navigate(new RoutePath(routeLats, routeLngs), interruptible, listener);
+    }
+
+    private void navigate(PilotPath path, boolean interruptible, OnNavigationCompleteListener listener) {
+        cancelNavigation();
+        stopIncubating();
+        stopPlayback();
+        mPilotInterruptible = interruptible;
+        mPilotListener = listener;
+        mPilotTimeline = new PilotTimeline(path, getPilotRate(), mClock.elapsedRealtimeNanos());
+        mPilotTask = mScheduler.schedule("AutoPilot", this::navigationStep,
+                PILOT_INTERVAL_MS, PILOT_INTERVAL_MS);
+    }
+
+    public synchronized void cancelNavigation() {
+        if (mPilotTask != null) {
+            mPilotTask.cancel();
+            mPilotTask = null;
+        }
+        mPilotTimeline = null;
+        mPilotListener = null;
+    }
+
+    public synchronized boolean isNavigating() {
+        return mPilotTimeline != null;
+    }
+
+    /*
+     * Move the auto pilot to where it should be at the current clock time, the
+     * position depends only on elapsed time and never on how many steps ran.
+     * Returns false if there is no navigation in progress.
+     */
+    public boolean navigationStep() {
+        OnNavigationCompleteListener listener = null;
+        boolean arrived;
+
+        synchronized (this) {
+            if (mPilotTimeline == null)
+                return false;
+
+            PilotTimeline timeline = mPilotTimeline;
+            double distance = timeline.distanceAt(mClock.elapsedRealtimeNanos());
+            // less than one step left, land on the target now
+            if (timeline.getLength() - distance < getPilotRate() * PILOT_INTERVAL_MS / 1000.0)
+                distance = timeline.getLength();
+            randomShift();
+            timeline.positionAt(distance, mPilotPosition, 0);
+            mLat = mPilotPosition[0];
+            mLng = mPilotPosition[1];
+            publish();
+
+            arrived = timeline.isArrived(distance);
+            if (arrived) {
+                listener = mPilotListener;
+                cancelNavigation();
+            }
+        }
+
+        emit();
+        if (arrived && listener != null)
+            listener.onNavigationComplete();
+        return true;
+    }
+
+    // Incubating
+    /*
+     * Wander around the current position for as long as it takes, staying
+     * within radius meters of it. One step per PILOT_INTERVAL_MS.
+     */
+    public synchronized void startIncubating(double radius) {
+        cancelNavigation();
+        stopIncubating();
+        stopPlayback();
+        LocalFence fence = new LocalFence(mLat, mLng, radius);
+        mIncubatingWalker = new IncubatingWalker(fence, createWalkSimulator(), new CoverageGrid(fence));
+        mIncubatingTask = mScheduler.schedule("Incubating", this::incubatingStep,
+                PILOT_INTERVAL_MS, PILOT_INTERVAL_MS);
+    }
+
+    public synchronized void stopIncubating() {
+        if (mIncubatingTask != null) {
+            mIncubatingTask.cancel();
+            mIncubatingTask = null;
+        }
+        mIncubatingWalker = null;
+    }
+
+    public synchronized boolean isIncubating() {
+        return mIncubatingWalker != null;
+    }
+
+    /*
+     * Share of the incubating circle walked so far, 0.0 ~ 1.0, or -1 if not
+     * incubating
+     */
+    public synchronized double getIncubatingCoverage() {
+        return mIncubatingWalker != null ? mIncubatingWalker.getCoverage().getCoverage() : -1;
+    }
+
+    /*
+     * Take one incubating step, returns false if not incubating
+     */
+    public boolean incubatingStep() {
+        synchronized (this) {
+            if (mIncubatingWalker == null)
+                return false;
+
+            randomShift();
+            if (mIncubatingWalker.nextStep(mLat, mLng, mStepVector)) {
+                double nextPace = getPaceMeters();
+                moveMeters(nextPace * mStepVector[0], nextPace * mStepVector[1]);
+            }
+            publish();
+        }
+        emit();
+        return true;
+    }
+
+    // Playback
+    /*
+     * Replay a recorded track from its first frame, keeping its timing scaled
+     * by the playback speed. The listener runs after the last frame.
+     */
+    public synchronized void startPlayback(PlaybackSource source, OnNavigationCompleteListener listener) {
+        cancelNavigation();
+        stopIncubating();
+        stopPlayback();
+        mPlayback = new PlaybackTimeline(source, mPlaybackSpeed, mClock.elapsedRealtimeNanos());
+        mPlaybackListener = listener;
+        mPlaybackTask = mScheduler.schedule("Playback", this::playbackStep, 0, PLAYBACK_INTERVAL_MS);
+    }
+
+    public synchronized void stopPlayback() {
+        if (mPlaybackTask != null) {
+            mPlaybackTask.cancel();
+            mPlaybackTask = null;
+        }
+        mPlayback = null;
+        mPlaybackListener = null;
+    }
+
+    public synchronized boolean isPlaying() {
+        return mPlayback != null;
+    }
+
+    /*
+     * Multiplier of the recorded time, 2.0 replays twice as fast, it also
+     * applies to a playback in progress
+     */
+    public synchronized void setPlaybackSpeed(double speed) {
+        mPlaybackSpeed = speed;
+        if (mPlayback != null)
+            mPlayback.setRate(speed, mClock.elapsedRealtimeNanos());
+    }
+
+    /*
+     * Emit the latest frame due at the current clock time, returns false if
+     * there is no playback in progress
+     */
+    public boolean playbackStep() {
+        OnNavigationCompleteListener listener = null;
+        boolean moved;
+        boolean finished;
+
+        synchronized (this) {
+            if (mPlayback == null)
+                return false;
+
+            PlaybackTimeline playback = mPlayback;
+            moved = playback.advance(mClock.elapsedRealtimeNanos());
+            if (moved) {
+                mLat = playback.getLatitude();
+                mLng = playback.getLongitude();
+                mAlt = playback.getAltitude();
+                mAccuracy = playback.getAccuracy();
+                mBearing = playback.getBearing();
+                mSpeed = playback.getSpeed();
+                publish();
+            }
+
+            finished = playback.isFinished();
+            if (finished) {
+                listener = mPlaybackListener;
+                stopPlayback();
+            }
+        }
+
+        if (moved)
+            emit();
+        if (finished && listener != null)
+            listener.onNavigationComplete();
+        return true;
+    }
+
+    private synchronized void interruptNavigation() {
+        if (mPilotTimeline != null && mPilotInterruptible)
+            cancelNavigation();
+    }
+
+    private double getPaceMeters() {
+        return (mProfile.paceAmount + mPaceShift) * GeoMath.METERS_PER_DEGREE * mPaceSpeed;
+    }
+
+    private void moveMeters(double east, double north) {
+        mFrame.ensureAnchor(mLat);
+        mLat = mLat + mFrame.latitudeDelta(north);
+        mLng = GeoMath.normalizeLongitude(mLng + mFrame.longitudeDelta(east));
+    }
+
+    // the pilot walks one pace per PILOT_INTERVAL_MS, in meters per second
+    private double getPilotRate() {
+        return (mProfile.paceAmount + mProfile.pilotShift) * GeoMath.METERS_PER_DEGREE * mPaceSpeed
+                * 1000.0 / PILOT_INTERVAL_MS;
+    }
+
+    public void release() {
+        cancelNavigation();
+        stopIncubating();
+        stopPlayback();
+        setRepeatInterval(0);
+    }
+
+    public interface OnNavigationCompleteListener {
+        void onNavigationComplete();
+    }
+}
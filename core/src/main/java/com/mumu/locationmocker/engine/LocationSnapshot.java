@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.engine;
+
+/*
+ * Location Snapshot
+ * One immutable position of the engine. A new snapshot is published for every
+ * change, so a reader that holds one always sees a latitude and longitude from
+ * the same update.
+ */
+public final class LocationSnapshot {
+    public final double latitude;
+    public final double longitude;
+    public final double altitude;
+    public final float accuracy;
+    public final float bearing;
+    public final float speed;
+
+    public LocationSnapshot(double latitude, double longitude, double altitude,
+                            float accuracy, float bearing, float speed) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.altitude = altitude;
+        this.accuracy = accuracy;
+        this.bearing = bearing;
+        this.speed = speed;
+    }
+
+    public String toString() {
+        return "Latitude = " + latitude + ", longitude = " + longitude + ", altitude = " +
+                altitude + ", accuracy = " + accuracy + ", bearing = " + bearing + ", speed = " + speed;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mumu.locationmocker.engine;
+
+/*
+ * Pace Profile
+ * How far one pace goes and how it wanders, a pace is paceAmount plus the
+ * current shift degrees of latitude worth of meters, times the pace speed.
+ * Every tick the shift moves by up to half of shiftStep either way and goes
+ * back to shiftDefault once it leaves -shiftBound ~ shiftBound. The auto pilot
+ * uses the fixed pilotShift instead.
+ *
+ * The bearing gains 0 ~ bearingJitter degrees every tick and drops back to 0
+ * once it is above bearingJitter, a jitter of 0 leaves the bearing alone.
+ *
+ * INTENT and FAKE are the paces the two location managers always had.
+ */
+public final class PaceProfile {
+    public static final PaceProfile INTENT = new PaceProfile(0.000002, 10, 0.0000001, 0.0000002,
+            0.0000001, 0.000001, 0.0f);
+    public static final PaceProfile FAKE = new PaceProfile(0.000038, 1, 0.000001, 0.000002,
+            0.000001, 0.000001, 10.0f);
+
+    public final double paceAmount;
+    public final double defaultSpeed;
+    public final double shiftDefault;
+    public final double shiftBound;
+    public final double shiftStep;
+    public final double pilotShift;
+    public final float bearingJitter;
+
+    public PaceProfile(double paceAmount, double defaultSpeed, double shiftDefault, double shiftBound,
+                       double shiftStep, double pilotShift, float bearingJitter) {
+        this.paceAmount = paceAmount;
+        this.defaultSpeed = defaultSpeed;
+        this.shiftDefault = shiftDefault;
+        this.shiftBound = shiftBound;
+        this.shiftStep = shiftStep;
+        this.pilotShift = pilotShift;
+        this.bearingJitter = bearingJitter;
+    }
+}
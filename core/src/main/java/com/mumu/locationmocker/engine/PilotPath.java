@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.engine;
+
+/*
+ * The geometry an auto pilot follows, a point for every arc length in meters
+ * from 0 to getLength()
+ */
+public interface PilotPath {
+    double getLength();
+
+    /*
+     * Point at distance meters along the path, written into out[offset]
+     * (latitude) and out[offset + 1] (longitude)
+     */
+    void positionAt(double distance, double[] out, int offset);
+}
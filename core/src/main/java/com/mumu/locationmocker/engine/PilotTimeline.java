@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.engine;
+
+/*
+ * Pilot Timeline
+ * The position of an auto pilot is a function of the monotonic time since the
+ * route started, not of how many steps have been taken. A slow tick only makes
+ * the next position jump further, so a route always takes length / rate seconds.
+ *
+ * Where the pilot is for a covered distance is up to its PilotPath, distances
+ * are in meters.
+ */
+public class PilotTimeline {
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    private final PilotPath mPath;
+    private final double mLength;
+
+    private long mAnchorNanos;
+    private double mAnchorDistance;
+    private double mRatePerSecond;
+
+    public PilotTimeline(double fromLat, double fromLng, double toLat, double toLng,
+                         double ratePerSecond, long nowNanos) {
+        this(new GreatCirclePath(fromLat, fromLng, toLat, toLng), ratePerSecond, nowNanos);
+    }
+
+    public PilotTimeline(PilotPath path, double ratePerSecond, long nowNanos) {
+        mPath = path;
+        mLength = path.getLength();
+        mAnchorNanos = nowNanos;
+        mAnchorDistance = 0;
+        mRatePerSecond = ratePerSecond;
+    }
+
+    /*
+     * Change the pace from now on, the distance covered so far is kept
+     */
+    public synchronized void setRate(double ratePerSecond, long nowNanos) {
+        mAnchorDistance = distanceAt(nowNanos);
+        mAnchorNanos = nowNanos;
+        mRatePerSecond = ratePerSecond;
+    }
+
+    public synchronized double distanceAt(long nowNanos) {
+        double distance = mAnchorDistance + mRatePerSecond * (nowNanos - mAnchorNanos) / NANOS_PER_SECOND;
+        return Math.min(distance, mLength);
+    }
+
+    public void positionAt(double distance, double[] out, int offset) {
+        mPath.positionAt(distance, out, offset);
+    }
+
+    public boolean isArrived(double distance) {
+        return distance >= mLength;
+    }
+
+    public double getLength() {
+        return mLength;
+    }
+}
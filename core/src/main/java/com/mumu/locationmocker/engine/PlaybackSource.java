@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.engine;
+
+/*
+ * Playback Source
+ * The frames of a recorded track in time order, read one at a time. The
+ * getters describe the frame the last successful next() moved to.
+ */
+public interface PlaybackSource {
+    /*
+     * Move to the next frame, false at the end of the track
+     */
+    boolean next();
+
+    /*
+     * Recording time of the frame in ms, only differences between frames matter
+     */
+    long getTimeMillis();
+
+    double getLatitude();
+
+    double getLongitude();
+
+    double getAltitude();
+
+    float getAccuracy();
+
+    float getBearing();
+
+    float getSpeed();
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.engine;
+
+/*
+ * Playback Timeline
+ * Replays a PlaybackSource keeping the recorded time between frames, scaled
+ * by a speed multiplier. Like PilotTimeline the frame due is a function of the
+ * monotonic time since playback started, so a slow tick skips frames instead
+ * of falling behind.
+ *
+ * Frames are decoded ahead into a fixed window of WINDOW frames in parallel
+ * arrays, refilled in one batch when used up, so a track of any length plays
+ * in the same memory. Time going backwards, a reboot between two recordings,
+ * counts as no gap, and gaps longer than MAX_GAP_MS, a paused recording,
+ * are shortened to it.
+ */
+public class PlaybackTimeline {
+    static final int WINDOW = 256;
+    static final long MAX_GAP_MS = 60000;
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final PlaybackSource mSource;
+    private final long[] mTime = new long[WINDOW];
+    private final double[] mLat = new double[WINDOW];
+    private final double[] mLng = new double[WINDOW];
+    private final double[] mAlt = new double[WINDOW];
+    private final float[] mAccuracy = new float[WINDOW];
+    private final float[] mBearing = new float[WINDOW];
+    private final float[] mSpeed = new float[WINDOW];
+    private int mIndex;
+    private int mCount;
+    private boolean mSourceEnded;
+    private long mLastRawTime;
+    private long mLastTime;
+    private boolean mStarted;
+
+    private long mAnchorNanos;
+    private double mAnchorMillis;
+    private double mRate;
+
+    // the frame most recently due
+    private double mFrameLat;
+    private double mFrameLng;
+    private double mFrameAlt;
+    private float mFrameAccuracy;
+    private float mFrameBearing;
+    private float mFrameSpeed;
+
+    public PlaybackTimeline(PlaybackSource source, double rate, long nowNanos) {
+        mSource = source;
+        mRate = rate;
+        mAnchorNanos = nowNanos;
+        fill();
+        mAnchorMillis = mCount > 0 ? mTime[0] : 0;
+    }
+
+    /*
+     * Change the speed multiplier from now on, the track time reached so far
+     * is kept
+     */
+    public synchronized void setRate(double rate, long nowNanos) {
+        mAnchorMillis = timeAt(nowNanos);
+        mAnchorNanos = nowNanos;
+        mRate = rate;
+    }
+
+    /*
+     * Move to the latest frame due at nowNanos, returns false if no new frame
+     * became due since the last call
+     */
+    public synchronized boolean advance(long nowNanos) {
+        double time = timeAt(nowNanos);
+        boolean advanced = false;
+        while (true) {
+            if (mIndex == mCount) {
+                fill();
+                if (mCount == 0)
+                    break;
+            }
+            if (mTime[mIndex] > time)
+                break;
+            keep(mIndex++);
+            advanced = true;
+        }
+        return advanced;
+    }
+
+    public synchronized boolean isFinished() {
+        return mIndex == mCount && mSourceEnded;
+    }
+
+    public synchronized double getLatitude() {
+        return mFrameLat;
+    }
+
+    public synchronized double getLongitude() {
+        return mFrameLng;
+    }
+
+    public synchronized double getAltitude() {
+        return mFrameAlt;
+    }
+
+    public synchronized float getAccuracy() {
+        return mFrameAccuracy;
+    }
+
+    public synchronized float getBearing() {
+        return mFrameBearing;
+    }
+
+    public synchronized float getSpeed() {
+        return mFrameSpeed;
+    }
+
+    private double timeAt(long nowNanos) {
+        return mAnchorMillis + (nowNanos - mAnchorNanos) / NANOS_PER_MILLI * mRate;
+    }
+
+    private void keep(int index) {
+        mFrameLat = mLat[index];
+        mFrameLng = mLng[index];
+        mFrameAlt = mAlt[index];
+        mFrameAccuracy = mAccuracy[index];
+        mFrameBearing = mBearing[index];
+        mFrameSpeed = mSpeed[index];
+    }
+
+    // decode the next WINDOW frames
+    private void fill() {
+        mIndex = 0;
+        mCount = 0;
+        while (mCount < WINDOW && !mSourceEnded) {
+            if (!mSource.next()) {
+                mSourceEnded = true;
+                break;
+            }
+
+            long raw = mSource.getTimeMillis();
+            if (mStarted)
+                mLastTime += Math.min(Math.max(raw - mLastRawTime, 0), MAX_GAP_MS);
+            else
+                mLastTime = raw;
+            mStarted = true;
+            mLastRawTime = raw;
+
+            mTime[mCount] = mLastTime;
+            mLat[mCount] = mSource.getLatitude();
+            mLng[mCount] = mSource.getLongitude();
+            mAlt[mCount] = mSource.getAltitude();
+            mAccuracy[mCount] = mSource.getAccuracy();
+            mBearing[mCount] = mSource.getBearing();
+            mSpeed[mCount] = mSource.getSpeed();
+            mCount++;
+        }
+    }
+}
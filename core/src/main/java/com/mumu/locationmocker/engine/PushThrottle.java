@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.engine;
+
+import com.mumu.locationmocker.geo.GeoMath;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Push Throttle
+ * Decides when one provider should get a new fix. A fix that moved further
+ * than the threshold from the last pushed one goes out right away, only held
+ * back by a short debounce so a burst of joystick moves is not pushed one by
+ * one. Smaller moves go out at the provider cadence and a position that does
+ * not move is only pushed again as a heartbeat so the provider does not look
+ * stale.
+ */
+public class PushThrottle {
+    private static final long DEBOUNCE_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private final long mMinIntervalNanos;
+    private final long mHeartbeatNanos;
+    private final double mMoveThreshold;
+
+    private boolean mPushed = false;
+    private long mLastPushNanos;
+    private double mLastLat;
+    private double mLastLng;
+
+    /*
+     * minIntervalMs is the provider cadence, heartbeatMs the longest time
+     * between two pushes and moveThreshold in meters
+     */
+    public PushThrottle(long minIntervalMs, long heartbeatMs, double moveThreshold) {
+        mMinIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMs);
+        mHeartbeatNanos = TimeUnit.MILLISECONDS.toNanos(heartbeatMs);
+        mMoveThreshold = moveThreshold;
+    }
+
+    public boolean shouldPush(long nowNanos, double lat, double lng) {
+        if (!mPushed)
+            return true;
+
+        long sinceLast = nowNanos - mLastPushNanos;
+        if (sinceLast >= mHeartbeatNanos)
+            return true;
+        if (sinceLast < DEBOUNCE_NANOS || (lat == mLastLat && lng == mLastLng))
+            return false;
+        return sinceLast >= mMinIntervalNanos ||
+                GeoMath.equirectangular(mLastLat, mLastLng, lat, lng) > mMoveThreshold;
+    }
+
+    public void onPushed(long nowNanos, double lat, double lng) {
+        mPushed = true;
+        mLastPushNanos = nowNanos;
+        mLastLat = lat;
+        mLastLng = lng;
+    }
+
+    /*
+     * Forget the last push, the next fix goes out right away
+     */
+    public void reset() {
+        mPushed = false;
+    }
+}
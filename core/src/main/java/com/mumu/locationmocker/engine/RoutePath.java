@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.engine;
+
+import com.mumu.locationmocker.geo.GeoMath;
+
+import java.util.Arrays;
+
+/*
+ * Route Path
+ * A route through a list of waypoints, each leg along its great circle. The
+ * legs are densified once into points no more than MAX_SEGMENT meters apart,
+ * kept in parallel latitude and longitude arrays together with the prefix sum
+ * of the segment lengths. A lookup is a binary search over those sums and a
+ * linear blend inside one short segment, so it costs the same for a route of
+ * two points as for one of tens of thousands.
+ */
+public class RoutePath implements PilotPath {
+    public static final double MAX_SEGMENT = 500.0;
+
+    private final double[] mLat;
+    private final double[] mLng;
+    private final double[] mDistance;
+    private final int mCount;
+
+    public RoutePath(double[] lats, double[] lngs) {
+        if (lats.length != lngs.length || lats.length < 1)
+            throw new IllegalArgumentException("A route needs matching latitudes and longitudes");
+
+        int count = 1;
+        int[] pieces = new int[lats.length];
+        double[] legLength = new double[lats.length];
+        for (int i = 1; i < lats.length; i++) {
+            legLength[i] = GeoMath.haversine(lats[i - 1], lngs[i - 1], lats[i], lngs[i]);
+            pieces[i] = Math.max(1, (int) Math.ceil(legLength[i] / MAX_SEGMENT));
+            count += pieces[i];
+        }
+
+        mLat = new double[count];
+        mLng = new double[count];
+        mDistance = new double[count];
+        mCount = count;
+
+        double[] point = new double[2];
+        int index = 0;
+        mLat[0] = lats[0];
+        mLng[0] = lngs[0];
+        for (int i = 1; i < lats.length; i++) {
+            GreatCirclePath leg = new GreatCirclePath(lats[i - 1], lngs[i - 1], lats[i], lngs[i]);
+            double start = mDistance[index];
+            for (int piece = 1; piece <= pieces[i]; piece++) {
+                double along = legLength[i] * piece / pieces[i];
+                leg.positionAt(piece == pieces[i] ? leg.getLength() : along, point, 0);
+                index++;
+                mLat[index] = point[0];
+                mLng[index] = point[1];
+                mDistance[index] = start + along;
+            }
+        }
+    }
+
+    @Override
+    public double getLength() {
+        return mDistance[mCount - 1];
+    }
+
+    public int getPointCount() {
+        return mCount;
+    }
+
+    @Override
+    public void positionAt(double distance, double[] out, int offset) {
+        if (distance <= 0 || mCount == 1) {
+            out[offset] = mLat[0];
+            out[offset + 1] = mLng[0];
+            return;
+        }
+        if (distance >= mDistance[mCount - 1]) {
+            out[offset] = mLat[mCount - 1];
+            out[offset + 1] = mLng[mCount - 1];
+            return;
+        }
+
+        // the segment from point - 1 to point holds distance
+        int point = Arrays.binarySearch(mDistance, 0, mCount, distance);
+        if (point >= 0) {
+            out[offset] = mLat[point];
+            out[offset + 1] = mLng[point];
+            return;
+        }
+        point = -point - 1;
+
+        double span = mDistance[point] - mDistance[point - 1];
+        double fraction = span > 0 ? (distance - mDistance[point - 1]) / span : 0;
+        double diffLng = GeoMath.normalizeLongitude(mLng[point] - mLng[point - 1]);
+        out[offset] = mLat[point - 1] + (mLat[point] - mLat[point - 1]) * fraction;
+        out[offset + 1] = GeoMath.normalizeLongitude(mLng[point - 1] + diffLng * fraction);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.geo;
+
+/*
+ * ENU Frame
+ * A local east-north-up plane anchored at a latitude, used to move a position
+ * by meters. The degrees per meter along both axes are cached at the anchor
+ * and only computed again once the latitude drifts by more than
+ * REANCHOR_DEGREES, about 11 m. The relative error of the longitude scale is
+ * tan(lat) times the drift in radians, so it stays under 1 ppm up to 25 degrees,
+ * 3 ppm at 60 degrees and 10 ppm at 80 degrees. Moving costs two
+ * multiplications, plus one cosine every 11 m north or south.
+ */
+public class EnuFrame {
+    private static final double REANCHOR_DEGREES = 0.0001;
+    private static final double MIN_COS_LATITUDE = 1e-6;
+
+    private double mAnchorLat = Double.NaN;
+    private double mDegreesPerMeterLat = 1.0 / GeoMath.METERS_PER_DEGREE;
+    private double mDegreesPerMeterLng;
+    private int mAnchorCount = 0;
+
+    /*
+     * Anchor the frame at lat again if lat is too far from the current anchor,
+     * returns true if it did
+     */
+    public boolean ensureAnchor(double lat) {
+        if (Math.abs(lat - mAnchorLat) <= REANCHOR_DEGREES)
+            return false;
+
+        double cos = Math.max(Math.cos(Math.toRadians(lat)), MIN_COS_LATITUDE);
+        mAnchorLat = lat;
+        mDegreesPerMeterLng = mDegreesPerMeterLat / cos;
+        mAnchorCount++;
+        return true;
+    }
+
+    /*
+     * Degrees of latitude for north meters
+     */
+    public double latitudeDelta(double north) {
+        return north * mDegreesPerMeterLat;
+    }
+
+    /*
+     * Degrees of longitude for east meters, at the anchor latitude
+     */
+    public double longitudeDelta(double east) {
+        return east * mDegreesPerMeterLng;
+    }
+
+    public int getAnchorCount() {
+        return mAnchorCount;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.geo;
+
+import java.text.DecimalFormat;
+
+/*
+ * Coordinate formatting shared by the overlay and the location trackers
+ */
+public final class GeoFormat {
+
+    private GeoFormat() {
+    }
+
+    /*
+     * "lat, lng" with five decimals, about one meter of resolution
+     */
+    public static String formatLatLng(double lat, double lng) {
+        DecimalFormat df = new DecimalFormat("0.00000");
+        return df.format(lat) + ", " + df.format(lng);
+    }
+}
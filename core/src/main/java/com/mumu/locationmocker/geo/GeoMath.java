@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.geo;
+
+/*
+ * Geodesy primitives on raw doubles. Nothing here allocates or depends on the
+ * Android framework, so it is safe to call on every tick and from JVM tests.
+ * Angles are in degrees and distances in meters unless noted otherwise.
+ */
+public final class GeoMath {
+    public static final double EARTH_RADIUS = 6371008.8; // mean radius
+    public static final double METERS_PER_DEGREE = EARTH_RADIUS * Math.PI / 180.0; // along a meridian
+    public static final double WGS84_A = 6378137.0;
+    public static final double WGS84_F = 1 / 298.257223563;
+    public static final double WGS84_B = WGS84_A * (1 - WGS84_F);
+
+    private static final int VINCENTY_MAX_ITERATIONS = 20;
+    private static final double VINCENTY_EPSILON = 1e-12;
+
+    private GeoMath() {
+    }
+
+    /*
+     * Great circle distance on a sphere, good to about 0.5% anywhere
+     */
+    public static double haversine(double lat1, double lng1, double lat2, double lng2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double sinDPhi = Math.sin((phi2 - phi1) / 2);
+        double sinDLambda = Math.sin(Math.toRadians(lng2 - lng1) / 2);
+        double h = sinDPhi * sinDPhi + Math.cos(phi1) * Math.cos(phi2) * sinDLambda * sinDLambda;
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1.0, Math.sqrt(h)));
+    }
+
+    /*
+     * Distance on the WGS84 ellipsoid with Vincenty's inverse formula, this is
+     * what Location.distanceBetween computes. Falls back to haversine for the
+     * nearly antipodal points where the iteration does not converge.
+     */
+    public static double vincenty(double lat1, double lng1, double lat2, double lng2) {
+        double l = Math.toRadians(lng2 - lng1);
+        double u1 = Math.atan((1 - WGS84_F) * Math.tan(Math.toRadians(lat1)));
+        double u2 = Math.atan((1 - WGS84_F) * Math.tan(Math.toRadians(lat2)));
+        double sinU1 = Math.sin(u1), cosU1 = Math.cos(u1);
+        double sinU2 = Math.sin(u2), cosU2 = Math.cos(u2);
+
+        double lambda = l;
+        double sinSigma, cosSigma, sigma, cosSqAlpha, cos2SigmaM;
+        int iteration = 0;
+        do {
+            double sinLambda = Math.sin(lambda), cosLambda = Math.cos(lambda);
+            double a = cosU2 * sinLambda;
+            double b = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+            sinSigma = Math.sqrt(a * a + b * b);
+            if (sinSigma == 0)
+                return 0; // coincident points
+
+            cosSigma = sinU1 * sinU2 + cosU1 * cosU2 * cosLambda;
+            sigma = Math.atan2(sinSigma, cosSigma);
+            double sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
+            cosSqAlpha = 1 - sinAlpha * sinAlpha;
+            cos2SigmaM = cosSqAlpha != 0 ? cosSigma - 2 * sinU1 * sinU2 / cosSqAlpha : 0; // equatorial line
+            double c = WGS84_F / 16 * cosSqAlpha * (4 + WGS84_F * (4 - 3 * cosSqAlpha));
+            double lambdaPrev = lambda;
+            lambda = l + (1 - c) * WGS84_F * sinAlpha *
+                    (sigma + c * sinSigma * (cos2SigmaM + c * cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)));
+            if (Math.abs(lambda - lambdaPrev) < VINCENTY_EPSILON)
+                break;
+        } while (++iteration < VINCENTY_MAX_ITERATIONS);
+
+        if (iteration >= VINCENTY_MAX_ITERATIONS)
+            return haversine(lat1, lng1, lat2, lng2);
+
+        double uSq = cosSqAlpha * (WGS84_A * WGS84_A - WGS84_B * WGS84_B) / (WGS84_B * WGS84_B);
+        double a = 1 + uSq / 16384 * (4096 + uSq * (-768 + uSq * (320 - 175 * uSq)));
+        double b = uSq / 1024 * (256 + uSq * (-128 + uSq * (74 - 47 * uSq)));
+        double deltaSigma = b * sinSigma * (cos2SigmaM + b / 4 * (cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM) -
+                b / 6 * cos2SigmaM * (-3 + 4 * sinSigma * sinSigma) * (-3 + 4 * cos2SigmaM * cos2SigmaM)));
+        return WGS84_B * a * (sigma - deltaSigma);
+    }
+
+    /*
+     * Flat earth approximation for short hops, a few hundred meters at most.
+     * It costs one cosine and one square root.
+     */
+    public static double equirectangular(double lat1, double lng1, double lat2, double lng2) {
+        double x = Math.toRadians(lng2 - lng1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = Math.toRadians(lat2 - lat1);
+        return EARTH_RADIUS * Math.sqrt(x * x + y * y);
+    }
+
+    /*
+     * Initial bearing of the great circle from point 1 to point 2, 0 ~ 360 degrees
+     * clockwise from north
+     */
+    public static double initialBearing(double lat1, double lng1, double lat2, double lng2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double dLambda = Math.toRadians(lng2 - lng1);
+        double y = Math.sin(dLambda) * Math.cos(phi2);
+        double x = Math.cos(phi1) * Math.sin(phi2) - Math.sin(phi1) * Math.cos(phi2) * Math.cos(dLambda);
+        return normalizeBearing(Math.toDegrees(Math.atan2(y, x)));
+    }
+
+    /*
+     * Point reached by travelling distance meters along the great circle
+     * starting at the given bearing. The result is written into out[offset]
+     * (latitude) and out[offset + 1] (longitude) so callers can reuse a buffer.
+     */
+    public static void destination(double lat, double lng, double bearing, double distance,
+                                   double[] out, int offset) {
+        double phi1 = Math.toRadians(lat);
+        double lambda1 = Math.toRadians(lng);
+        double theta = Math.toRadians(bearing);
+        double delta = distance / EARTH_RADIUS;
+        double sinPhi1 = Math.sin(phi1), cosPhi1 = Math.cos(phi1);
+        double sinDelta = Math.sin(delta), cosDelta = Math.cos(delta);
+
+        double sinPhi2 = sinPhi1 * cosDelta + cosPhi1 * sinDelta * Math.cos(theta);
+        double phi2 = Math.asin(sinPhi2);
+        double lambda2 = lambda1 + Math.atan2(Math.sin(theta) * sinDelta * cosPhi1, cosDelta - sinPhi1 * sinPhi2);
+
+        out[offset] = Math.toDegrees(phi2);
+        out[offset + 1] = normalizeLongitude(Math.toDegrees(lambda2));
+    }
+
+    public static double normalizeBearing(double bearing) {
+        double b = bearing % 360.0;
+        return b < 0 ? b + 360.0 : b;
+    }
+
+    public static double normalizeLongitude(double lng) {
+        if (lng >= -180.0 && lng < 180.0)
+            return lng;
+        double l = (lng + 180.0) % 360.0;
+        return (l < 0 ? l + 360.0 : l) - 180.0;
+    }
+}
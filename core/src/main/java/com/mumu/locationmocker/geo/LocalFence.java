@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.geo;
+
+/*
+ * Local Fence
+ * A circle around a center point on a flat local plane. The cosine of the
+ * center latitude is taken once, after that the offset of a point in meters
+ * is two multiplications and the boundary test compares squared distances,
+ * no trigonometry and no square root. Good for radii of a few kilometers.
+ */
+public class LocalFence {
+    private final double mCenterLat;
+    private final double mCenterLng;
+    private final double mRadius;
+    private final double mRadiusSquared;
+    private final double mMetersPerDegreeLat;
+    private final double mMetersPerDegreeLng;
+
+    public LocalFence(double centerLat, double centerLng, double radius) {
+        mCenterLat = centerLat;
+        mCenterLng = centerLng;
+        mRadius = radius;
+        mRadiusSquared = radius * radius;
+        mMetersPerDegreeLat = GeoMath.METERS_PER_DEGREE;
+        mMetersPerDegreeLng = GeoMath.METERS_PER_DEGREE * Math.cos(Math.toRadians(centerLat));
+    }
+
+    public double getCenterLatitude() {
+        return mCenterLat;
+    }
+
+    public double getCenterLongitude() {
+        return mCenterLng;
+    }
+
+    public double getRadius() {
+        return mRadius;
+    }
+
+    /*
+     * Meters east of the center
+     */
+    public double eastOf(double lng) {
+        return GeoMath.normalizeLongitude(lng - mCenterLng) * mMetersPerDegreeLng;
+    }
+
+    /*
+     * Meters north of the center
+     */
+    public double northOf(double lat) {
+        return (lat - mCenterLat) * mMetersPerDegreeLat;
+    }
+
+    public double distanceSquared(double lat, double lng) {
+        double east = eastOf(lng);
+        double north = northOf(lat);
+        return east * east + north * north;
+    }
+
+    public boolean contains(double lat, double lng) {
+        return distanceSquared(lat, lng) <= mRadiusSquared;
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.scheduler;
+
+/*
+ * Monotonic time source of the scheduler and the engine, on device this is
+ * SystemClock.elapsedRealtimeNanos(). SYSTEM is System.nanoTime(), which on
+ * Android stops in deep sleep, it is only meant for the JVM.
+ */
+public interface SimClock {
+    long elapsedRealtimeNanos();
+
+    SimClock SYSTEM = System::nanoTime;
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.scheduler;
+
+
+import java.util.PriorityQueue;
+
+/*
+ * Tick Scheduler
+ * One thread and one queue of deadlines for every timed loop in the app. The
+ * thread only wakes up for the earliest deadline, so an overlay session has a
+ * single wakeup source no matter how many features are ticking.
+ *
+ * Periodic tasks run at a fixed rate: the next deadline is the last deadline
+ * plus the period. If a task runs so late that one or more deadlines have
+ * already passed, the missed ticks are skipped and counted as overruns.
+ *
+ * A scheduler built on a VirtualClock has no thread at all. Time only passes in
+ * advance(), which runs every task that comes due on the calling thread and
+ * moves the clock from deadline to deadline without waiting.
+ */
+public class TickScheduler {
+    private static final String THREAD_NAME = "TickScheduler";
+    private static TickScheduler mDefault;
+    private static SimClock mDefaultClock = SimClock.SYSTEM;
+
+    private final SimClock mClock;
+    private final VirtualClock mVirtualClock;
+    private final Object mLock = new Object();
+    private final PriorityQueue<TickTask> mQueue = new PriorityQueue<>(16, (a, b) -> {
+        if (a.mDeadlineNanos != b.mDeadlineNanos)
+            return a.mDeadlineNanos - b.mDeadlineNanos < 0 ? -1 : 1;
+        return Long.compare(a.mSequence, b.mSequence);
+    });
+    private Thread mThread;
+    private long mSequence = 0;
+    private boolean mShutdown = false;
+
+    public TickScheduler() {
+        this(SimClock.SYSTEM);
+    }
+
+    /*
+     * A scheduler with its own thread, deadlines are read from clock
+     */
+    public TickScheduler(SimClock clock) {
+        mClock = clock;
+        mVirtualClock = null;
+    }
+
+    public TickScheduler(VirtualClock clock) {
+        mClock = clock;
+        mVirtualClock = clock;
+    }
+
+    public static synchronized TickScheduler get() {
+        if (mDefault == null)
+            mDefault = new TickScheduler(mDefaultClock);
+        return mDefault;
+    }
+
+    /*
+     * The clock of the shared scheduler, it must be the one the engine uses.
+     * Only takes effect before the first get(), returns false after.
+     */
+    public static synchronized boolean setDefaultClock(SimClock clock) {
+        if (mDefault != null)
+            return false;
+        mDefaultClock = clock;
+        return true;
+    }
+
+    /*
+     * Schedule runnable every periodMs milliseconds, the first run happens
+     * after delayMs. A period of 0 means the task runs only once.
+     */
+    public TickTask schedule(String name, Runnable runnable, long delayMs, long periodMs) {
+        if (periodMs < 0 || delayMs < 0)
+            throw new IllegalArgumentException("Negative delay or period for " + name);
+
+        TickTask task = new TickTask(this, name, runnable, periodMs * 1000000L);
+        synchronized (mLock) {
+            if (mShutdown)
+                throw new IllegalStateException("TickScheduler has been shut down");
+            task.mDeadlineNanos = now() + delayMs * 1000000L;
+            enqueueLocked(task);
+            ensureThreadLocked();
+        }
+        return task;
+    }
+
+    public TickTask scheduleOnce(String name, Runnable runnable, long delayMs) {
+        return schedule(name, runnable, delayMs, 0);
+    }
+
+    /*
+     * Virtual schedulers only, move the clock forward by durationMs and run
+     * every task that comes due on the way in deadline order
+     */
+    public void advance(long durationMs) {
+        if (mVirtualClock == null)
+            throw new IllegalStateException("Only a virtual TickScheduler can be advanced");
+
+        long target = now() + durationMs * 1000000L;
+        while (true) {
+            TickTask task;
+            synchronized (mLock) {
+                TickTask head = mQueue.peek();
+                if (mShutdown || head == null || head.mDeadlineNanos > target)
+                    break;
+                task = pollLocked();
+                mVirtualClock.advanceTo(task.mDeadlineNanos);
+            }
+            runTask(task);
+        }
+        mVirtualClock.advanceTo(target);
+    }
+
+    public void shutdown() {
+        synchronized (mLock) {
+            mShutdown = true;
+            mQueue.clear();
+            mLock.notifyAll();
+        }
+    }
+
+    public int getTaskCount() {
+        synchronized (mLock) {
+            return mQueue.size();
+        }
+    }
+
+    void remove(TickTask task) {
+        synchronized (mLock) {
+            if (task.mQueued) {
+                mQueue.remove(task);
+                task.mQueued = false;
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    void reschedule(TickTask task, long periodNanos) {
+        if (periodNanos <= 0)
+            throw new IllegalArgumentException("Period must be positive for " + task.getName());
+
+        synchronized (mLock) {
+            long lastDeadline = task.mDeadlineNanos - task.mPeriodNanos;
+            task.mPeriodNanos = periodNanos;
+            if (task.mQueued) {
+                mQueue.remove(task);
+                task.mDeadlineNanos = lastDeadline + periodNanos;
+                enqueueLocked(task);
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    long getPeriodNanos(TickTask task) {
+        synchronized (mLock) {
+            return task.mPeriodNanos;
+        }
+    }
+
+    private long now() {
+        return mClock.elapsedRealtimeNanos();
+    }
+
+    private void enqueueLocked(TickTask task) {
+        task.mSequence = mSequence++;
+        task.mQueued = true;
+        mQueue.add(task);
+        mLock.notifyAll();
+    }
+
+    private TickTask pollLocked() {
+        TickTask task = mQueue.poll();
+        task.mQueued = false;
+        return task;
+    }
+
+    private void ensureThreadLocked() {
+        if (mThread == null && mVirtualClock == null) {
+            mThread = new Thread(this::loop, THREAD_NAME);
+            mThread.setDaemon(true);
+            mThread.start();
+        }
+    }
+
+    private void loop() {
+        while (true) {
+            TickTask task;
+
+            synchronized (mLock) {
+                while (true) {
+                    if (mShutdown) {
+                        mThread = null;
+                        return;
+                    }
+                    TickTask head = mQueue.peek();
+                    long waitNanos = head == null ? Long.MAX_VALUE : head.mDeadlineNanos - now();
+                    if (waitNanos <= 0)
+                        break;
+                    try {
+                        if (head == null) {
+                            mLock.wait();
+                        } else {
+                            mLock.wait(waitNanos / 1000000L, (int) (waitNanos % 1000000L));
+                        }
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+                task = pollLocked();
+            }
+
+            runTask(task);
+        }
+    }
+
+    private void runTask(TickTask task) {
+        long lateness = now() - task.mDeadlineNanos;
+        task.markLateness(lateness);
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+
+        long missedTicks = 0;
+        long overrunLateness = 0;
+        synchronized (mLock) {
+            if (task.isCancelled() || task.mPeriodNanos == 0 || mShutdown)
+                return;
+
+            long period = task.mPeriodNanos;
+            long next = task.mDeadlineNanos + period;
+            long current = now();
+            if (next <= current) {
+                overrunLateness = current - next;
+                missedTicks = overrunLateness / period + 1;
+                next += missedTicks * period;
+            }
+            task.mDeadlineNanos = next;
+            enqueueLocked(task);
+        }
+
+        if (missedTicks > 0)
+            task.markOverrun(missedTicks, overrunLateness);
+    }
+}
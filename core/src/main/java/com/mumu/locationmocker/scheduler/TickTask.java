@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.scheduler;
+
+/*
+ * A task registered with TickScheduler. The handle is used to cancel the task,
+ * change its period and read its overrun statistics.
+ */
+public class TickTask {
+    private final TickScheduler mScheduler;
+    private final String mName;
+    private final Runnable mRunnable;
+
+    // guarded by the scheduler lock
+    long mDeadlineNanos;
+    long mSequence;
+    long mPeriodNanos;
+    boolean mQueued;
+
+    private volatile boolean mCancelled = false;
+    private volatile long mRunCount = 0;
+    private volatile long mOverrunCount = 0;
+    private volatile long mMaxLatenessNanos = 0;
+    private volatile OverrunListener mOverrunListener;
+
+    TickTask(TickScheduler scheduler, String name, Runnable runnable, long periodNanos) {
+        mScheduler = scheduler;
+        mName = name;
+        mRunnable = runnable;
+        mPeriodNanos = periodNanos;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public void cancel() {
+        mCancelled = true;
+        mScheduler.remove(this);
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /*
+     * Change the period of a periodic task, the next deadline is counted from
+     * the last deadline so the change takes effect immediately.
+     */
+    public void setPeriod(long periodMs) {
+        mScheduler.reschedule(this, periodMs * 1000000L);
+    }
+
+    public long getPeriodMs() {
+        return mScheduler.getPeriodNanos(this) / 1000000L;
+    }
+
+    public long getRunCount() {
+        return mRunCount;
+    }
+
+    public long getOverrunCount() {
+        return mOverrunCount;
+    }
+
+    public long getMaxLatenessMs() {
+        return mMaxLatenessNanos / 1000000L;
+    }
+
+    public void setOverrunListener(OverrunListener listener) {
+        mOverrunListener = listener;
+    }
+
+    void run() {
+        mRunCount++;
+        mRunnable.run();
+    }
+
+    void markLateness(long latenessNanos) {
+        if (latenessNanos > mMaxLatenessNanos)
+            mMaxLatenessNanos = latenessNanos;
+    }
+
+    void markOverrun(long missedTicks, long latenessNanos) {
+        mOverrunCount += missedTicks;
+        OverrunListener listener = mOverrunListener;
+        if (listener != null)
+            listener.onOverrun(this, missedTicks, latenessNanos / 1000000L);
+    }
+
+    public String toString() {
+        return "TickTask " + mName + ": runs = " + mRunCount + ", overruns = " + mOverrunCount +
+                ", max lateness = " + getMaxLatenessMs() + " ms";
+    }
+
+    public interface OverrunListener {
+        void onOverrun(TickTask task, long missedTicks, long latenessMs);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.scheduler;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Virtual Clock
+ * A SimClock that only moves when it is told to. Together with a virtual
+ * TickScheduler it runs hours of simulation as fast as the CPU allows.
+ */
+public class VirtualClock implements SimClock {
+    private volatile long mNowNanos;
+
+    public VirtualClock() {
+        this(0);
+    }
+
+    public VirtualClock(long startNanos) {
+        mNowNanos = startNanos;
+    }
+
+    @Override
+    public long elapsedRealtimeNanos() {
+        return mNowNanos;
+    }
+
+    public synchronized void advance(long durationMs) {
+        mNowNanos += TimeUnit.MILLISECONDS.toNanos(durationMs);
+    }
+
+    /*
+     * Move the clock to nowNanos, a time in the past is ignored
+     */
+    public synchronized void advanceTo(long nowNanos) {
+        if (nowNanos > mNowNanos)
+            mNowNanos = nowNanos;
+    }
+}
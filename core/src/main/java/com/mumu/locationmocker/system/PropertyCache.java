@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.system;
+
+import com.mumu.locationmocker.scheduler.SimClock;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * Property Cache
+ * Serves system properties from one parsed getprop dump instead of running
+ * getprop for every lookup. The dump is taken again once it is older than the
+ * time to live or when refresh() is called. Lookups read an immutable map and
+ * never block on a refresh that is already in flight: the first reader to find
+ * the dump expired takes the new one, everyone else keeps getting the old map
+ * until it is done. Only the very first dump is waited for, there is nothing
+ * older to serve.
+ */
+public class PropertyCache {
+    private final Loader mLoader;
+    private final SimClock mClock;
+    private final long mTtlNanos;
+    private volatile Map<String, String> mProperties = Collections.emptyMap();
+    private volatile long mLoadedAtNanos;
+    private volatile boolean mLoaded = false;
+    private final AtomicBoolean mRefreshing = new AtomicBoolean(false);
+    private int mLoadCount = 0;
+
+    public PropertyCache(Loader loader, SimClock clock, long ttlMs) {
+        mLoader = loader;
+        mClock = clock;
+        mTtlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+    }
+
+    public String get(String key) {
+        return get(key, "");
+    }
+
+    public String get(String key, String defaultValue) {
+        String value = getAll().get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    public Map<String, String> getAll() {
+        if (!mLoaded) {
+            synchronized (this) {
+                if (!mLoaded)
+                    load();
+            }
+        } else if (isExpired() && mRefreshing.compareAndSet(false, true)) {
+            try {
+                synchronized (this) {
+                    // refresh() may have run while this thread was waiting for the lock
+                    if (isExpired())
+                        load();
+                }
+            } finally {
+                mRefreshing.set(false);
+            }
+        }
+        return mProperties;
+    }
+
+    /*
+     * Take a new dump now. When the loader fails the previous properties are
+     * kept until the next time the cache expires.
+     */
+    public synchronized Map<String, String> refresh() {
+        load();
+        return mProperties;
+    }
+
+    private boolean isExpired() {
+        return mClock.elapsedRealtimeNanos() - mLoadedAtNanos >= mTtlNanos;
+    }
+
+    // guarded by this
+    private void load() {
+        try {
+            mProperties = parse(mLoader.load());
+            mLoadCount++;
+        } catch (IOException ignored) {
+        }
+        mLoadedAtNanos = mClock.elapsedRealtimeNanos();
+        mLoaded = true;
+    }
+
+    public synchronized int getLoadCount() {
+        return mLoadCount;
+    }
+
+    /*
+     * Parse getprop output, one "[key]: [value]" per line. A value that spans
+     * several lines goes on until a line that ends with the closing bracket.
+     */
+    public static Map<String, String> parse(String dump) {
+        Map<String, String> properties = new HashMap<>();
+        String key = null;
+        StringBuilder value = new StringBuilder();
+
+        for (String line : dump.split("\n")) {
+            if (key == null) {
+                int keyEnd = line.indexOf("]: [");
+                if (!line.startsWith("[") || keyEnd < 0)
+                    continue;
+                key = line.substring(1, keyEnd);
+                value.setLength(0);
+                line = line.substring(keyEnd + 4);
+            } else {
+                value.append('\n');
+            }
+
+            if (line.endsWith("]")) {
+                value.append(line, 0, line.length() - 1);
+                properties.put(key, value.toString());
+                key = null;
+            } else {
+                value.append(line);
+            }
+        }
+        return Collections.unmodifiableMap(properties);
+    }
+
+    public interface Loader {
+        String load() throws IOException;
+    }
+}
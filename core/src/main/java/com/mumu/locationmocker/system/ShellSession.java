@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.system;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Shell Session
+ * A long lived shell process that runs commands over its stdin and stdout, so
+ * repeated commands do not fork a new shell each. Every command is followed by
+ * an echo of a marker line which tells where its output ends. The session is
+ * restarted on the next command if the shell dies.
+ */
+public class ShellSession implements Closeable {
+    public static final String[] DEFAULT_SHELL = {"/system/bin/sh"};
+    private static final String END_MARKER = "__LOCATION_MOCKER_END__";
+
+    private final String[] mShell;
+    private Process mProcess;
+    private Writer mStdin;
+    private BufferedReader mStdout;
+
+    public ShellSession() {
+        this(DEFAULT_SHELL);
+    }
+
+    public ShellSession(String... shell) {
+        mShell = shell.clone();
+    }
+
+    /*
+     * Run the command in the shell and return its standard output without the
+     * trailing line break. Standard error is dropped.
+     */
+    public synchronized String run(String command) throws IOException {
+        try {
+            if (mProcess == null)
+                start();
+
+            mStdin.write(command);
+            mStdin.write("\necho " + END_MARKER + "\n");
+            mStdin.flush();
+
+            StringBuilder output = new StringBuilder();
+            String line;
+            while ((line = mStdout.readLine()) != null) {
+                if (line.endsWith(END_MARKER)) {
+                    output.append(line, 0, line.length() - END_MARKER.length());
+                    if (output.length() > 0 && output.charAt(output.length() - 1) == '\n')
+                        output.setLength(output.length() - 1);
+                    return output.toString();
+                }
+                output.append(line).append('\n');
+            }
+            throw new IOException("Shell exited while running " + command);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public synchronized boolean isAlive() {
+        return mProcess != null;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (mProcess == null)
+            return;
+
+        closeQuietly(mStdin);
+        closeQuietly(mStdout);
+        closeQuietly(mProcess.getErrorStream());
+        mProcess.destroy();
+        mProcess = null;
+        mStdin = null;
+        mStdout = null;
+    }
+
+    private void start() throws IOException {
+        mProcess = new ProcessBuilder(mShell).start();
+        mStdin = new OutputStreamWriter(mProcess.getOutputStream(), StandardCharsets.UTF_8);
+        mStdout = new BufferedReader(new InputStreamReader(mProcess.getInputStream(), StandardCharsets.UTF_8));
+        mStdin.write("exec 2>/dev/null\n");
+    }
+
+    /*
+     * Run one command in a shell of its own, wait for it to exit and release
+     * its streams.
+     */
+    public static String exec(String command) throws IOException {
+        return exec(command, DEFAULT_SHELL);
+    }
+
+    public static String exec(String command, String... shell) throws IOException {
+        String[] cmd = new String[shell.length + 2];
+        System.arraycopy(shell, 0, cmd, 0, shell.length);
+        cmd[shell.length] = "-c";
+        cmd[shell.length + 1] = "exec 2>/dev/null; " + command;
+
+        Process process = new ProcessBuilder(cmd).start();
+        try {
+            process.getOutputStream().close();
+
+            StringBuilder output = new StringBuilder();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (output.length() > 0)
+                        output.append('\n');
+                    output.append(line);
+                }
+            }
+            process.waitFor();
+            return output.toString();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while running " + command);
+        } finally {
+            process.destroy();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
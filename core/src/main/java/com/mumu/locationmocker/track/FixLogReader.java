@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.track;
+
+import com.mumu.locationmocker.engine.PlaybackSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Fix Log Reader
+ * Iterates the fixes of a log written by FixRecorder. Blocks are decoded one
+ * at a time into reused column arrays when the previous one is used up, a
+ * block cut short by a crash ends the log.
+ *
+ * As a PlaybackSource the time of a fix is its elapsed realtime. A log mixes
+ * the fixes of several providers, a provider filter keeps playback to one.
+ */
+public class FixLogReader implements PlaybackSource {
+    public static final int ALL_PROVIDERS = -1;
+
+    private final Varint mInput;
+    private final long mCreatedMillis;
+    private final byte[] mProviders = new byte[FixRecorder.BLOCK_SIZE];
+    private final long[][] mColumns = new long[FixRecorder.COLUMNS][FixRecorder.BLOCK_SIZE];
+    private int mCount;
+    private int mRow = -1;
+    private int mProviderFilter = ALL_PROVIDERS;
+
+    public FixLogReader(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.limit() - start < FixRecorder.HEADER_SIZE
+                || buffer.getInt(start) != FixRecorder.MAGIC
+                || buffer.getInt(start + 4) != FixRecorder.VERSION)
+            throw new IllegalArgumentException("Not a fix log");
+        mCreatedMillis = buffer.getLong(start + 8);
+        mInput = new Varint(buffer, start + FixRecorder.HEADER_SIZE);
+    }
+
+    public static FixLogReader open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new FixLogReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /*
+     * Whether any fix in the whole log came from provider. Only the provider
+     * bytes of every block are looked at, the columns are stepped over.
+     */
+    public static boolean containsProvider(ByteBuffer buffer, int provider) {
+        Varint input = new FixLogReader(buffer).mInput;
+        while (input.hasRemaining()) {
+            long count = input.read();
+            if (input.isTruncated() || count <= 0 || count > FixRecorder.BLOCK_SIZE)
+                return false;
+            for (int row = 0; row < count; row++) {
+                if (input.readByte() == provider && !input.isTruncated())
+                    return true;
+            }
+            input.skip(count * FixRecorder.COLUMNS);
+            if (input.isTruncated())
+                return false;
+        }
+        return false;
+    }
+
+    /*
+     * Wall clock time the log was started at
+     */
+    public long getCreatedMillis() {
+        return mCreatedMillis;
+    }
+
+    /*
+     * Only return fixes of the given FixRecorder.PROVIDER_*, or ALL_PROVIDERS
+     */
+    public void setProviderFilter(int provider) {
+        mProviderFilter = provider;
+    }
+
+    /*
+     * Move to the next fix, false at the end of the log
+     */
+    @Override
+    public boolean next() {
+        do {
+            if (mRow + 1 < mCount) {
+                mRow++;
+            } else if (readBlock()) {
+                mRow = 0;
+            } else {
+                return false;
+            }
+        } while (mProviderFilter != ALL_PROVIDERS && mProviders[mRow] != mProviderFilter);
+        return true;
+    }
+
+    private boolean readBlock() {
+        mCount = 0;
+        if (!mInput.hasRemaining())
+            return false;
+
+        long count = mInput.read();
+        if (count <= 0 || count > FixRecorder.BLOCK_SIZE)
+            return false;
+        for (int row = 0; row < count; row++)
+            mProviders[row] = (byte) mInput.readByte();
+        for (long[] column : mColumns) {
+            long value = 0;
+            for (int row = 0; row < count; row++) {
+                value += mInput.readSigned();
+                column[row] = value;
+            }
+        }
+        if (mInput.isTruncated())
+            return false;
+        mCount = (int) count;
+        return true;
+    }
+
+    public int getProvider() {
+        return mProviders[mRow];
+    }
+
+    /*
+     * Elapsed realtime of the fix in ms
+     */
+    public long getElapsedMillis() {
+        return mColumns[FixRecorder.ELAPSED][mRow];
+    }
+
+    @Override
+    public long getTimeMillis() {
+        return getElapsedMillis();
+    }
+
+    public long getUtcMillis() {
+        return mColumns[FixRecorder.UTC][mRow];
+    }
+
+    @Override
+    public double getLatitude() {
+        return mColumns[FixRecorder.LATITUDE][mRow] / TrackRecorder.MICRODEGREES;
+    }
+
+    @Override
+    public double getLongitude() {
+        return mColumns[FixRecorder.LONGITUDE][mRow] / TrackRecorder.MICRODEGREES;
+    }
+
+    @Override
+    public double getAltitude() {
+        return mColumns[FixRecorder.ALTITUDE][mRow] / TrackRecorder.CENTI;
+    }
+
+    @Override
+    public float getAccuracy() {
+        return (float) (mColumns[FixRecorder.ACCURACY][mRow] / TrackRecorder.CENTI);
+    }
+
+    @Override
+    public float getBearing() {
+        return (float) (mColumns[FixRecorder.BEARING][mRow] / TrackRecorder.CENTI);
+    }
+
+    @Override
+    public float getSpeed() {
+        return (float) (mColumns[FixRecorder.SPEED][mRow] / TrackRecorder.CENTI);
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.track;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Fix Recorder
+ * Appends real location fixes to a columnar log. Fixes are collected into a
+ * block of BLOCK_SIZE rows held in preallocated column arrays, so recording a
+ * fix is a handful of array stores with no allocation, cheap enough for a
+ * location callback on the main looper. A flusher thread encodes full blocks,
+ * and the partial one every FLUSH_INTERVAL_MS, column after column:
+ *
+ *   header   magic "JLMX", version, wall clock time of creation in ms
+ *   block    varint row count, then for every column all its rows
+ *            provider        one byte per row, PROVIDER_*
+ *            elapsed time    zigzag deltas in ms
+ *            utc time        zigzag deltas in ms
+ *            latitude        zigzag deltas in microdegrees
+ *            longitude       zigzag deltas in microdegrees
+ *            altitude        zigzag deltas in cm
+ *            accuracy        zigzag deltas in cm
+ *            bearing         zigzag deltas in centidegrees
+ *            speed           zigzag deltas in cm/s
+ *
+ * Deltas restart from zero in every block so a block decodes on its own.
+ * There are two blocks, while the flusher still writes one and the other
+ * fills up, further fixes are dropped and counted.
+ */
+public class FixRecorder {
+    public static final int MAGIC = 0x4A4C4D58;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+
+    public static final int PROVIDER_OTHER = 0;
+    public static final int PROVIDER_GPS = 1;
+    public static final int PROVIDER_NETWORK = 2;
+    public static final int PROVIDER_FUSED = 3;
+
+    static final int BLOCK_SIZE = 256;
+    static final int COLUMNS = 8;
+    static final int ELAPSED = 0;
+    static final int UTC = 1;
+    static final int LATITUDE = 2;
+    static final int LONGITUDE = 3;
+    static final int ALTITUDE = 4;
+    static final int ACCURACY = 5;
+    static final int BEARING = 6;
+    static final int SPEED = 7;
+
+    private static final long FLUSH_INTERVAL_MS = 10000;
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final File mFile;
+    private final Thread mFlusher;
+
+    // guarded by this
+    private Block mActive = new Block();
+    private Block mSpare = new Block();
+    private Block mWriting;
+    private long mRecordedCount;
+    private long mDroppedCount;
+    private long mFlushRequests;
+    private long mFlushedRequests;
+    private boolean mClosed;
+    private boolean mStopped;
+    private IOException mError;
+    private Runnable mOnClosed;
+
+    // flusher thread only
+    private final ByteBuffer mOut = ByteBuffer.allocate(10 + BLOCK_SIZE * (1 + COLUMNS * 10));
+    private FileChannel mChannel;
+
+    public FixRecorder(File file) {
+        mFile = file;
+        mFlusher = new Thread(this::flushLoop, "FixRecorder");
+        mFlusher.setDaemon(true);
+        mFlusher.start();
+    }
+
+    public synchronized void onFix(int provider, long elapsedRealtimeNanos, long utcMillis,
+                                   double lat, double lng, double alt,
+                                   float accuracy, float bearing, float speed) {
+        if (mClosed || mError != null) {
+            mDroppedCount++;
+            return;
+        }
+        if (mActive.count == BLOCK_SIZE) {
+            if (mWriting != null) {
+                mDroppedCount++;
+                return;
+            }
+            handOver();
+        }
+
+        int row = mActive.count++;
+        long[][] columns = mActive.columns;
+        mActive.providers[row] = (byte) provider;
+        columns[ELAPSED][row] = elapsedRealtimeNanos / NANOS_PER_MILLI;
+        columns[UTC][row] = utcMillis;
+        columns[LATITUDE][row] = Math.round(lat * TrackRecorder.MICRODEGREES);
+        columns[LONGITUDE][row] = Math.round(lng * TrackRecorder.MICRODEGREES);
+        columns[ALTITUDE][row] = Math.round(alt * TrackRecorder.CENTI);
+        columns[ACCURACY][row] = Math.round(accuracy * TrackRecorder.CENTI);
+        columns[BEARING][row] = Math.round(bearing * TrackRecorder.CENTI);
+        columns[SPEED][row] = Math.round(speed * TrackRecorder.CENTI);
+        mRecordedCount++;
+
+        if (mActive.count == BLOCK_SIZE && mWriting == null) {
+            handOver();
+        }
+    }
+
+    // give the active block to the flusher and continue in the spare one
+    private void handOver() {
+        mWriting = mActive;
+        mActive = mSpare;
+        mSpare = null;
+        notifyAll();
+    }
+
+    /*
+     * Block until every fix recorded so far is handed to the file system
+     */
+    public synchronized void flush() {
+        long request = ++mFlushRequests;
+        notifyAll();
+        try {
+            while (mFlushedRequests < request && !mStopped)
+                wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Write out every fix recorded so far and stop the flusher, fixes
+     * arriving later are dropped. Blocks until the file is closed, callers on
+     * the main thread use closeAsync() instead.
+     */
+    public void close() {
+        closeAsync(null);
+        try {
+            mFlusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Like close() but returns right away, the flusher writes out the rest on
+     * its own thread and then runs onClosed there, which may be null
+     */
+    public void closeAsync(Runnable onClosed) {
+        boolean stopped;
+        synchronized (this) {
+            mClosed = true;
+            stopped = mStopped;
+            if (!stopped)
+                mOnClosed = onClosed;
+            notifyAll();
+        }
+        if (stopped && onClosed != null)
+            onClosed.run();
+    }
+
+    public synchronized long getRecordedCount() {
+        return mRecordedCount;
+    }
+
+    public synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /*
+     * The disk error which stopped the recording, or null
+     */
+    public synchronized IOException getError() {
+        return mError;
+    }
+
+    private void flushLoop() {
+        while (true) {
+            Block block;
+            boolean closing;
+            long flushRequests;
+            synchronized (this) {
+                if (mWriting == null && !mClosed && mFlushRequests == mFlushedRequests) {
+                    try {
+                        wait(FLUSH_INTERVAL_MS);
+                    } catch (InterruptedException e) {
+                        mClosed = true;
+                    }
+                }
+                if (mWriting == null && mActive.count > 0)
+                    handOver();
+                block = mWriting;
+                closing = mClosed;
+                flushRequests = mFlushRequests;
+            }
+
+            boolean failed = false;
+            if (block != null) {
+                try {
+                    write(block);
+                } catch (IOException e) {
+                    synchronized (this) {
+                        mError = e;
+                    }
+                    failed = true;
+                }
+            }
+
+            synchronized (this) {
+                if (block != null) {
+                    block.count = 0;
+                    mSpare = block;
+                    mWriting = null;
+                }
+                // fixes recorded meanwhile are written before flush() returns
+                if (mActive.count == 0 || failed)
+                    mFlushedRequests = flushRequests;
+                notifyAll();
+            }
+            if (failed || (closing && block == null))
+                break;
+        }
+
+        try {
+            if (mChannel != null)
+                mChannel.close();
+        } catch (IOException e) {
+            synchronized (this) {
+                if (mError == null)
+                    mError = e;
+            }
+        }
+        Runnable onClosed;
+        synchronized (this) {
+            mStopped = true;
+            onClosed = mOnClosed;
+            mOnClosed = null;
+            notifyAll();
+        }
+        if (onClosed != null)
+            onClosed.run();
+    }
+
+    private void write(Block block) throws IOException {
+        if (mChannel == null) {
+            File parent = mFile.getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs())
+                throw new IOException("Cannot create " + parent);
+            mChannel = FileChannel.open(mFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            if (mChannel.size() == 0) {
+                mOut.clear();
+                mOut.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis()).flip();
+                while (mOut.hasRemaining())
+                    mChannel.write(mOut);
+            }
+        }
+
+        mOut.clear();
+        Varint.write(mOut, block.count);
+        mOut.put(block.providers, 0, block.count);
+        for (long[] column : block.columns) {
+            long previous = 0;
+            for (int row = 0; row < block.count; row++) {
+                Varint.writeSigned(mOut, column[row] - previous);
+                previous = column[row];
+            }
+        }
+        mOut.flip();
+        while (mOut.hasRemaining())
+            mChannel.write(mOut);
+    }
+
+    private static class Block {
+        final byte[] providers = new byte[BLOCK_SIZE];
+        final long[][] columns = new long[COLUMNS][BLOCK_SIZE];
+        int count;
+    }
+}
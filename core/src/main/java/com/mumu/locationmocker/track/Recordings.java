@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.track;
+
+import com.mumu.locationmocker.engine.PlaybackSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Recordings
+ * Opens what TrackRecorder and FixRecorder wrote as a PlaybackSource. Files
+ * are memory mapped and the readers decode them lazily, a directory of track
+ * segments plays as one track with every segment mapped only once reached.
+ * A log of real fixes plays its GPS fixes, or all of them if it has none.
+ * A directory without a single readable segment fails to open rather than
+ * playing as an empty track.
+ */
+public final class Recordings {
+    private Recordings() {
+    }
+
+    public static boolean isRecording(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.limit() - start < 4)
+            return false;
+        int magic = buffer.getInt(start);
+        return magic == TrackRecorder.MAGIC || magic == FixRecorder.MAGIC;
+    }
+
+    public static PlaybackSource open(File file) throws IOException {
+        if (file.isDirectory())
+            return new SegmentChain(file, TrackRecorder.listSegments(file));
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return open(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static PlaybackSource open(ByteBuffer buffer) {
+        if (!isRecording(buffer))
+            throw new IllegalArgumentException("Not a track recording or fix log");
+        if (buffer.getInt(buffer.position()) == TrackRecorder.MAGIC)
+            return new TrackRecordReader(buffer);
+
+        FixLogReader reader = new FixLogReader(buffer);
+        if (FixLogReader.containsProvider(buffer, FixRecorder.PROVIDER_GPS))
+            reader.setProviderFilter(FixRecorder.PROVIDER_GPS);
+        return reader;
+    }
+
+    /*
+     * Segments a recorder may have rotated away meanwhile are skipped
+     */
+    private static class SegmentChain implements PlaybackSource {
+        private final File[] mSegments;
+        private int mNext;
+        private TrackRecordReader mCurrent;
+
+        SegmentChain(File directory, File[] segments) throws IOException {
+            mSegments = segments;
+            if (!openNext())
+                throw new IOException("No readable track segment in " + directory);
+        }
+
+        @Override
+        public boolean next() {
+            while (mCurrent == null || !mCurrent.next()) {
+                if (!openNext())
+                    return false;
+            }
+            return true;
+        }
+
+        private boolean openNext() {
+            mCurrent = null;
+            while (mNext < mSegments.length) {
+                try {
+                    mCurrent = TrackRecordReader.open(mSegments[mNext++]);
+                    return true;
+                } catch (IOException | IllegalArgumentException e) {
+                    // rotated away or not a segment, try the next one
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public long getTimeMillis() {
+            return mCurrent.getTimeMillis();
+        }
+
+        @Override
+        public double getLatitude() {
+            return mCurrent.getLatitude();
+        }
+
+        @Override
+        public double getLongitude() {
+            return mCurrent.getLongitude();
+        }
+
+        @Override
+        public double getAltitude() {
+            return mCurrent.getAltitude();
+        }
+
+        @Override
+        public float getAccuracy() {
+            return mCurrent.getAccuracy();
+        }
+
+        @Override
+        public float getBearing() {
+            return mCurrent.getBearing();
+        }
+
+        @Override
+        public float getSpeed() {
+            return mCurrent.getSpeed();
+        }
+    }
+}
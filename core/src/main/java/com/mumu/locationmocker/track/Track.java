@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.track;
+
+import com.mumu.locationmocker.engine.RoutePath;
+
+import java.util.Arrays;
+
+/*
+ * Track
+ * The points of an imported track in parallel latitude and longitude arrays,
+ * the same shape RoutePath is built from, so a track of any length is two
+ * arrays and never one object per point.
+ */
+public class Track {
+    private double[] mLat;
+    private double[] mLng;
+    private int mSize;
+
+    public Track() {
+        this(256);
+    }
+
+    public Track(int capacity) {
+        mLat = new double[Math.max(16, capacity)];
+        mLng = new double[mLat.length];
+    }
+
+    /*
+     * Append a point, points out of range or equal to the previous one are dropped
+     */
+    public void add(double lat, double lng) {
+        if (!(lat >= -90.0 && lat <= 90.0 && lng >= -180.0 && lng <= 180.0))
+            return;
+        if (mSize > 0 && mLat[mSize - 1] == lat && mLng[mSize - 1] == lng)
+            return;
+
+        if (mSize == mLat.length) {
+            mLat = Arrays.copyOf(mLat, mSize * 2);
+            mLng = Arrays.copyOf(mLng, mSize * 2);
+        }
+        mLat[mSize] = lat;
+        mLng[mSize] = lng;
+        mSize++;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public double getLatitude(int index) {
+        return mLat[index];
+    }
+
+    public double getLongitude(int index) {
+        return mLng[index];
+    }
+
+    public double[] getLatitudes() {
+        return Arrays.copyOf(mLat, mSize);
+    }
+
+    public double[] getLongitudes() {
+        return Arrays.copyOf(mLng, mSize);
+    }
+
+    public RoutePath toRoutePath() {
+        return new RoutePath(getLatitudes(), getLongitudes());
+    }
+}
@@ -0,0 +1,543 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.track;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Track Importer
+ * Reads GPX, KML and GeoJSON tracks into a Track with one forward pass over
+ * the raw bytes, usually a memory mapped file. Nothing is decoded into strings
+ * or a document tree, tag names and keys are compared in place and numbers are
+ * parsed straight from the bytes, so a multi-megabyte file costs the two
+ * arrays of the track and nothing else.
+ *
+ *   GPX      lat and lon of every <trkpt> and <rtept>
+ *   KML      <coordinates> of every <LineString>, and <gx:coord> of <gx:Track>
+ *   GeoJSON  every position of a "coordinates" value except a bare Point
+ *
+ * Files must be UTF-8 or ASCII. Points that do not parse are skipped rather
+ * than failing the whole file.
+ */
+public class TrackImporter {
+    public static final int FORMAT_UNKNOWN = 0;
+    public static final int FORMAT_GPX = 1;
+    public static final int FORMAT_KML = 2;
+    public static final int FORMAT_GEOJSON = 3;
+
+    // about the size of one GPX track point, only used to presize the track
+    private static final int BYTES_PER_POINT = 64;
+    private static final int MAX_DIGITS = 18;
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+    }
+
+    private static final byte[] TRKPT = ascii("trkpt");
+    private static final byte[] RTEPT = ascii("rtept");
+    private static final byte[] LAT = ascii("lat");
+    private static final byte[] LON = ascii("lon");
+    private static final byte[] LINE_STRING = ascii("LineString");
+    private static final byte[] COORDINATES = ascii("coordinates");
+    private static final byte[] GX_TRACK = ascii("Track");
+    private static final byte[] GX_COORD = ascii("coord");
+    private static final byte[] GPX = ascii("gpx");
+    private static final byte[] KML = ascii("kml");
+    private static final byte[] COMMENT_END = ascii("-->");
+    private static final byte[] CDATA_END = ascii("]]>");
+    private static final byte[] INSTRUCTION_END = ascii("?>");
+
+    private final ByteBuffer mBuffer;
+    private final int mLimit;
+    private final Track mTrack;
+    private int mPos;
+
+    private TrackImporter(ByteBuffer buffer, Track track) {
+        mBuffer = buffer;
+        mLimit = buffer.limit();
+        mPos = buffer.position();
+        mTrack = track;
+    }
+
+    public static Track read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return read(channel);
+        }
+    }
+
+    /*
+     * Map the whole channel and parse it, the mapping outlives the channel so
+     * the caller may close it right after
+     */
+    public static Track read(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("Track file too large, " + size + " bytes");
+        return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+    }
+
+    /*
+     * Parse the bytes between position and limit of buffer, the buffer itself
+     * is left untouched
+     */
+    public static Track parse(ByteBuffer buffer) {
+        int format = detectFormat(buffer);
+        TrackImporter importer = new TrackImporter(buffer,
+                new Track(buffer.remaining() / BYTES_PER_POINT));
+        switch (format) {
+            case FORMAT_GPX:
+            case FORMAT_KML:
+                importer.parseXml();
+                break;
+            case FORMAT_GEOJSON:
+                importer.parseJson();
+                break;
+            default:
+                throw new IllegalArgumentException("Not a GPX, KML or GeoJSON track");
+        }
+        return importer.mTrack;
+    }
+
+    public static int detectFormat(ByteBuffer buffer) {
+        return new TrackImporter(buffer, null).sniff();
+    }
+
+    private int sniff() {
+        // UTF-8 byte order mark
+        if (at(mPos) == (byte) 0xEF && at(mPos + 1) == (byte) 0xBB && at(mPos + 2) == (byte) 0xBF)
+            mPos += 3;
+        skipWhitespace();
+
+        byte first = at(mPos);
+        if (first == '{' || first == '[')
+            return FORMAT_GEOJSON;
+        if (first != '<')
+            return FORMAT_UNKNOWN;
+
+        // the first element after the prolog and comments names the format
+        while ((mPos = indexOf('<', mPos)) >= 0) {
+            mPos++;
+            if (skipMarkup())
+                continue;
+            int nameEnd = nameEnd(mPos);
+            int localName = localName(mPos, nameEnd);
+            if (regionEquals(localName, nameEnd, GPX))
+                return FORMAT_GPX;
+            if (regionEquals(localName, nameEnd, KML))
+                return FORMAT_KML;
+            return FORMAT_UNKNOWN;
+        }
+        return FORMAT_UNKNOWN;
+    }
+
+    /*
+     * XML
+     */
+    private void parseXml() {
+        int lineStrings = 0;
+        int gxTracks = 0;
+
+        while ((mPos = indexOf('<', mPos)) >= 0) {
+            mPos++;
+            if (skipMarkup())
+                continue;
+
+            boolean closing = at(mPos) == '/';
+            if (closing)
+                mPos++;
+            int nameStart = mPos;
+            int nameEnd = nameEnd(nameStart);
+            int localName = localName(nameStart, nameEnd);
+            mPos = nameEnd;
+
+            if (closing) {
+                if (regionEquals(localName, nameEnd, LINE_STRING))
+                    lineStrings = Math.max(0, lineStrings - 1);
+                else if (regionEquals(localName, nameEnd, GX_TRACK))
+                    gxTracks = Math.max(0, gxTracks - 1);
+                skipTag();
+            } else if (regionEquals(localName, nameEnd, TRKPT) || regionEquals(localName, nameEnd, RTEPT)) {
+                readPointAttributes();
+            } else if (skipTag()) {
+                // self-closing, no content
+            } else if (regionEquals(localName, nameEnd, LINE_STRING)) {
+                lineStrings++;
+            } else if (regionEquals(localName, nameEnd, GX_TRACK)) {
+                gxTracks++;
+            } else if (lineStrings > 0 && regionEquals(localName, nameEnd, COORDINATES)) {
+                readCoordinateTuples();
+            } else if (gxTracks > 0 && regionEquals(localName, nameEnd, GX_COORD)) {
+                readGxCoord();
+            }
+        }
+    }
+
+    /*
+     * Skip comments, CDATA, processing instructions and declarations that
+     * start right after a '<', returns false if this is an element tag
+     */
+    private boolean skipMarkup() {
+        byte b = at(mPos);
+        if (b == '!') {
+            if (at(mPos + 1) == '-' && at(mPos + 2) == '-')
+                mPos = skipPast(mPos + 3, COMMENT_END);
+            else if (at(mPos + 1) == '[')
+                mPos = skipPast(mPos + 2, CDATA_END);
+            else
+                skipTag();
+            return true;
+        }
+        if (b == '?') {
+            mPos = skipPast(mPos + 1, INSTRUCTION_END);
+            return true;
+        }
+        return false;
+    }
+
+    /*
+     * Move past the '>' ending the current tag, honoring quoted attribute
+     * values, returns true if the tag was self-closing
+     */
+    private boolean skipTag() {
+        byte last = 0;
+        while (mPos < mLimit) {
+            byte b = at(mPos++);
+            if (b == '>')
+                return last == '/';
+            if (b == '"' || b == '\'') {
+                int end = indexOf(b, mPos);
+                mPos = end < 0 ? mLimit : end + 1;
+            }
+            last = b;
+        }
+        return false;
+    }
+
+    private void readPointAttributes() {
+        double lat = Double.NaN;
+        double lng = Double.NaN;
+
+        while (true) {
+            skipWhitespace();
+            byte b = at(mPos);
+            if (b == '>' || b == '/' || mPos >= mLimit)
+                break;
+
+            int nameStart = mPos;
+            while (mPos < mLimit && at(mPos) != '=' && at(mPos) != '>' && !isWhitespace(at(mPos)))
+                mPos++;
+            int nameEnd = mPos;
+            skipWhitespace();
+            if (at(mPos) != '=')
+                continue;
+            mPos++;
+            skipWhitespace();
+
+            byte quote = at(mPos);
+            if (quote != '"' && quote != '\'')
+                continue;
+            int valueEnd = indexOf(quote, mPos + 1);
+            if (valueEnd < 0)
+                valueEnd = mLimit;
+
+            if (regionEquals(nameStart, nameEnd, LAT) || regionEquals(nameStart, nameEnd, LON)) {
+                mPos++;
+                skipWhitespace();
+                double value = readNumber();
+                if (regionEquals(nameStart, nameEnd, LAT))
+                    lat = value;
+                else
+                    lng = value;
+            }
+            mPos = valueEnd + 1;
+        }
+
+        skipTag();
+        mTrack.add(lat, lng);
+    }
+
+    /*
+     * "lng,lat[,alt]" tuples separated by whitespace up to the closing tag
+     */
+    private void readCoordinateTuples() {
+        while (true) {
+            skipWhitespace();
+            if (mPos >= mLimit || at(mPos) == '<')
+                return;
+
+            int start = mPos;
+            double lng = readNumber();
+            double lat = Double.NaN;
+            if (at(mPos) == ',') {
+                mPos++;
+                lat = readNumber();
+            }
+            mTrack.add(lat, lng);
+
+            // altitude or garbage, up to the next tuple
+            while (mPos < mLimit && at(mPos) != '<' && !isWhitespace(at(mPos)))
+                mPos++;
+            if (mPos == start)
+                mPos++;
+        }
+    }
+
+    /*
+     * "lng lat alt" of a single gx:coord
+     */
+    private void readGxCoord() {
+        skipWhitespace();
+        double lng = readNumber();
+        skipWhitespace();
+        double lat = readNumber();
+        mTrack.add(lat, lng);
+    }
+
+    /*
+     * GeoJSON
+     */
+    private void parseJson() {
+        while ((mPos = indexOf('"', mPos)) >= 0) {
+            int keyStart = mPos + 1;
+            int keyEnd = stringEnd(keyStart);
+            mPos = keyEnd + 1;
+            if (regionEquals(keyStart, keyEnd, COORDINATES)) {
+                skipWhitespace();
+                if (at(mPos) == ':') {
+                    mPos++;
+                    readPositions();
+                }
+            }
+        }
+    }
+
+    private int stringEnd(int pos) {
+        while (pos < mLimit) {
+            byte b = at(pos);
+            if (b == '\\')
+                pos += 2;
+            else if (b == '"')
+                return pos;
+            else
+                pos++;
+        }
+        return mLimit;
+    }
+
+    /*
+     * Walk the nested arrays of a coordinates value, an array starting with a
+     * number is a position [lng, lat, ...]
+     */
+    private void readPositions() {
+        int depth = 0;
+        do {
+            skipWhitespace();
+            byte b = at(mPos);
+            if (b == '[') {
+                mPos++;
+                skipWhitespace();
+                if (!isNumberStart(at(mPos))) {
+                    depth++;
+                    continue;
+                }
+
+                double lng = readNumber();
+                skipWhitespace();
+                double lat = Double.NaN;
+                if (at(mPos) == ',') {
+                    mPos++;
+                    skipWhitespace();
+                    lat = readNumber();
+                }
+                // a bare Point is a marker, not part of a track
+                if (depth > 0)
+                    mTrack.add(lat, lng);
+
+                int end = indexOf(']', mPos);
+                mPos = end < 0 ? mLimit : end + 1;
+            } else if (b == ']') {
+                mPos++;
+                depth--;
+            } else if (b == ',') {
+                mPos++;
+            } else {
+                // null or anything that is not an array
+                return;
+            }
+        } while (depth > 0 && mPos < mLimit);
+    }
+
+    /*
+     * Numbers
+     * Up to MAX_DIGITS significant digits go into a long which is scaled by an
+     * exact power of ten, for coordinates that is within one ulp of
+     * Double.parseDouble without creating a string. Returns NaN if there is no
+     * number at the current position.
+     */
+    private double readNumber() {
+        int pos = mPos;
+        boolean negative = false;
+        byte b = at(pos);
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            pos++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean any = false;
+        for (b = at(pos); isDigit(b); b = at(++pos)) {
+            any = true;
+            if (digits < MAX_DIGITS) {
+                mantissa = mantissa * 10 + (b - '0');
+                if (mantissa != 0)
+                    digits++;
+            } else {
+                scale++;
+            }
+        }
+        if (b == '.') {
+            for (b = at(++pos); isDigit(b); b = at(++pos)) {
+                any = true;
+                if (digits < MAX_DIGITS) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0)
+                        digits++;
+                    scale--;
+                }
+            }
+        }
+        if (!any) {
+            mPos = pos;
+            return Double.NaN;
+        }
+
+        if (b == 'e' || b == 'E') {
+            int exponentPos = pos + 1;
+            boolean negativeExponent = false;
+            if (at(exponentPos) == '-' || at(exponentPos) == '+') {
+                negativeExponent = at(exponentPos) == '-';
+                exponentPos++;
+            }
+            if (isDigit(at(exponentPos))) {
+                int exponent = 0;
+                for (b = at(exponentPos); isDigit(b); b = at(++exponentPos))
+                    exponent = Math.min(exponent * 10 + (b - '0'), 1000);
+                scale += negativeExponent ? -exponent : exponent;
+                pos = exponentPos;
+            }
+        }
+        mPos = pos;
+
+        double value = mantissa;
+        while (scale > 22) {
+            value *= 1e22;
+            scale -= 22;
+        }
+        while (scale < -22) {
+            value /= 1e22;
+            scale += 22;
+        }
+        value = scale < 0 ? value / POWERS_OF_TEN[-scale] : value * POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    /*
+     * Bytes
+     */
+    private byte at(int pos) {
+        return pos < mLimit ? mBuffer.get(pos) : 0;
+    }
+
+    private int indexOf(int target, int from) {
+        for (int pos = from; pos < mLimit; pos++) {
+            if (mBuffer.get(pos) == target)
+                return pos;
+        }
+        return -1;
+    }
+
+    // position right after the first occurrence of terminator
+    private int skipPast(int from, byte[] terminator) {
+        for (int pos = from; pos <= mLimit - terminator.length; pos++) {
+            if (regionEquals(pos, pos + terminator.length, terminator))
+                return pos + terminator.length;
+        }
+        return mLimit;
+    }
+
+    private void skipWhitespace() {
+        while (mPos < mLimit && isWhitespace(at(mPos)))
+            mPos++;
+    }
+
+    private int nameEnd(int pos) {
+        while (pos < mLimit) {
+            byte b = at(pos);
+            if (b == '>' || b == '/' || isWhitespace(b))
+                break;
+            pos++;
+        }
+        return pos;
+    }
+
+    // start of the name without its namespace prefix
+    private int localName(int start, int end) {
+        for (int pos = end - 1; pos >= start; pos--) {
+            if (at(pos) == ':')
+                return pos + 1;
+        }
+        return start;
+    }
+
+    private boolean regionEquals(int start, int end, byte[] expected) {
+        if (end - start != expected.length)
+            return false;
+        for (int i = 0; i < expected.length; i++) {
+            if (at(start + i) != expected[i])
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isNumberStart(byte b) {
+        return isDigit(b) || b == '-' || b == '+' || b == '.';
+    }
+
+    private static byte[] ascii(String text) {
+        byte[] bytes = new byte[text.length()];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) text.charAt(i);
+        return bytes;
+    }
+}
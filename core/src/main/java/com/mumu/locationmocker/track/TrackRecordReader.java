@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.track;
+
+import com.mumu.locationmocker.engine.PlaybackSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Track Record Reader
+ * Decodes one segment written by TrackRecorder frame by frame, keeping only
+ * the running values of the latest frame. A frame cut short by a crash ends
+ * the segment instead of failing it.
+ */
+public class TrackRecordReader implements PlaybackSource {
+    private final Varint mInput;
+    private final long mCreatedMillis;
+    private final long[] mValues = new long[7];
+    private boolean mEnded;
+
+    public TrackRecordReader(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.limit() - start < TrackRecorder.HEADER_SIZE
+                || buffer.getInt(start) != TrackRecorder.MAGIC
+                || buffer.getInt(start + 4) != TrackRecorder.VERSION)
+            throw new IllegalArgumentException("Not a track recording");
+        mCreatedMillis = buffer.getLong(start + 8);
+        mInput = new Varint(buffer, start + TrackRecorder.HEADER_SIZE);
+    }
+
+    public static TrackRecordReader open(File segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.READ)) {
+            return new TrackRecordReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /*
+     * Wall clock time the segment was started at
+     */
+    public long getCreatedMillis() {
+        return mCreatedMillis;
+    }
+
+    /*
+     * Decode the next frame, false at the end of the segment
+     */
+    @Override
+    public boolean next() {
+        if (mEnded || !mInput.hasRemaining())
+            return false;
+
+        int mask = mInput.readByte();
+        long time = mValues[0] + mInput.read();
+        long lat = mValues[1], lng = mValues[2], alt = mValues[3];
+        long acc = mValues[4], bear = mValues[5], spd = mValues[6];
+        if ((mask & TrackRecorder.FIELD_LATITUDE) != 0)
+            lat += mInput.readSigned();
+        if ((mask & TrackRecorder.FIELD_LONGITUDE) != 0)
+            lng += mInput.readSigned();
+        if ((mask & TrackRecorder.FIELD_ALTITUDE) != 0)
+            alt += mInput.readSigned();
+        if ((mask & TrackRecorder.FIELD_ACCURACY) != 0)
+            acc += mInput.readSigned();
+        if ((mask & TrackRecorder.FIELD_BEARING) != 0)
+            bear += mInput.readSigned();
+        if ((mask & TrackRecorder.FIELD_SPEED) != 0)
+            spd += mInput.readSigned();
+
+        if (mInput.isTruncated()) {
+            mEnded = true;
+            return false;
+        }
+        mValues[0] = time;
+        mValues[1] = lat;
+        mValues[2] = lng;
+        mValues[3] = alt;
+        mValues[4] = acc;
+        mValues[5] = bear;
+        mValues[6] = spd;
+        return true;
+    }
+
+    /*
+     * Recorder clock time of the frame in ms
+     */
+    @Override
+    public long getTimeMillis() {
+        return mValues[0];
+    }
+
+    @Override
+    public double getLatitude() {
+        return mValues[1] / TrackRecorder.MICRODEGREES;
+    }
+
+    @Override
+    public double getLongitude() {
+        return mValues[2] / TrackRecorder.MICRODEGREES;
+    }
+
+    @Override
+    public double getAltitude() {
+        return mValues[3] / TrackRecorder.CENTI;
+    }
+
+    @Override
+    public float getAccuracy() {
+        return (float) (mValues[4] / TrackRecorder.CENTI);
+    }
+
+    @Override
+    public float getBearing() {
+        return (float) (mValues[5] / TrackRecorder.CENTI);
+    }
+
+    @Override
+    public float getSpeed() {
+        return (float) (mValues[6] / TrackRecorder.CENTI);
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.track;
+
+import com.mumu.locationmocker.engine.LocationSink;
+import com.mumu.locationmocker.scheduler.SimClock;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Track Recorder
+ * Appends every location it receives to a log of segment files in a
+ * directory. A segment starts with a header and is followed by frames, each
+ * frame stores only what changed since the previous one:
+ *
+ *   header   magic "JLMT", version, wall clock time of creation in ms
+ *   frame    mask byte, which of the fields below follow
+ *            varint     time since the previous frame in ms, always present
+ *            zigzag     latitude delta in microdegrees         bit 0
+ *            zigzag     longitude delta in microdegrees        bit 1
+ *            zigzag     altitude delta in cm                   bit 2
+ *            zigzag     accuracy delta in cm                   bit 3
+ *            zigzag     bearing delta in centidegrees          bit 4
+ *            zigzag     speed delta in cm/s                    bit 5
+ *
+ * The first frame of a segment is relative to all zeros, so every segment
+ * decodes on its own. A walking step is typically five to seven bytes.
+ *
+ * The caller only encodes into a memory buffer under a short lock. A flusher
+ * thread swaps the buffer with a spare and writes it out through a FileChannel
+ * every FLUSH_INTERVAL_MS or once it is half full. Frames arriving while the
+ * buffer is still full are dropped and counted rather than waiting for the disk.
+ * Once a segment reaches the segment size the next one is started and the
+ * oldest beyond the segment count are deleted.
+ */
+public class TrackRecorder implements LocationSink {
+    public static final int MAGIC = 0x4A4C4D54;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final String SEGMENT_PREFIX = "track-";
+    public static final String SEGMENT_SUFFIX = ".bin";
+
+    public static final int FIELD_LATITUDE = 1;
+    public static final int FIELD_LONGITUDE = 1 << 1;
+    public static final int FIELD_ALTITUDE = 1 << 2;
+    public static final int FIELD_ACCURACY = 1 << 3;
+    public static final int FIELD_BEARING = 1 << 4;
+    public static final int FIELD_SPEED = 1 << 5;
+
+    static final double MICRODEGREES = 1e6;
+    static final double CENTI = 100.0;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_FRAME_SIZE = 1 + 7 * 10;
+    private static final long FLUSH_INTERVAL_MS = 1000;
+
+    private final File mDirectory;
+    private final SimClock mClock;
+    private final long mSegmentSize;
+    private final int mMaxSegments;
+    private final Thread mFlusher;
+
+    // guarded by this
+    private ByteBuffer mActive = ByteBuffer.allocate(BUFFER_SIZE);
+    private ByteBuffer mSpare = ByteBuffer.allocate(BUFFER_SIZE);
+    private final long[] mPrevious = new long[7];
+    private final long[] mCurrent = new long[7];
+    private long mSegmentBytes;
+    private int mRotateAt = -1;
+    private long mRecordedCount;
+    private long mDroppedCount;
+    private long mFlushRequests;
+    private long mFlushedRequests;
+    private boolean mClosed;
+    private boolean mStopped;
+    private IOException mError;
+    private Runnable mOnClosed;
+
+    // flusher thread only
+    private FileChannel mChannel;
+    private int mSegmentIndex;
+
+    public TrackRecorder(File directory, SimClock clock, long segmentSize, int maxSegments) {
+        if (segmentSize < BUFFER_SIZE || maxSegments < 1)
+            throw new IllegalArgumentException("Segments must hold at least " + BUFFER_SIZE + " bytes");
+
+        mDirectory = directory;
+        mClock = clock;
+        mSegmentSize = segmentSize;
+        mMaxSegments = maxSegments;
+        mSegmentBytes = HEADER_SIZE;
+
+        File[] existing = listSegments(directory);
+        mSegmentIndex = existing.length == 0 ? 0 : segmentIndex(existing[existing.length - 1]);
+
+        mFlusher = new Thread(this::flushLoop, "TrackRecorder");
+        mFlusher.setDaemon(true);
+        mFlusher.start();
+    }
+
+    @Override
+    public void onLocation(double lat, double lng, double alt, float accuracy, float bearing, float speed) {
+        long now = TimeUnit.NANOSECONDS.toMillis(mClock.elapsedRealtimeNanos());
+
+        synchronized (this) {
+            if (mClosed || mError != null || mActive.remaining() < MAX_FRAME_SIZE) {
+                mDroppedCount++;
+                return;
+            }
+
+            if (mSegmentBytes >= mSegmentSize && mRotateAt < 0) {
+                // the rest of this buffer goes to a new segment, starting from zeros again
+                mRotateAt = mActive.position();
+                mSegmentBytes = HEADER_SIZE;
+                Arrays.fill(mPrevious, 0);
+            }
+
+            mCurrent[0] = Math.max(now, mPrevious[0]);
+            mCurrent[1] = Math.round(lat * MICRODEGREES);
+            mCurrent[2] = Math.round(lng * MICRODEGREES);
+            mCurrent[3] = Math.round(alt * CENTI);
+            mCurrent[4] = Math.round(accuracy * CENTI);
+            mCurrent[5] = Math.round(bearing * CENTI);
+            mCurrent[6] = Math.round(speed * CENTI);
+
+            int start = mActive.position();
+            int mask = 0;
+            for (int i = 1; i < mCurrent.length; i++) {
+                if (mCurrent[i] != mPrevious[i])
+                    mask |= 1 << (i - 1);
+            }
+            mActive.put((byte) mask);
+            Varint.write(mActive, mCurrent[0] - mPrevious[0]);
+            for (int i = 1; i < mCurrent.length; i++) {
+                if ((mask & (1 << (i - 1))) != 0)
+                    Varint.writeSigned(mActive, mCurrent[i] - mPrevious[i]);
+            }
+            System.arraycopy(mCurrent, 0, mPrevious, 0, mCurrent.length);
+
+            mSegmentBytes += mActive.position() - start;
+            mRecordedCount++;
+            if (mActive.position() >= BUFFER_SIZE / 2)
+                notifyAll();
+        }
+    }
+
+    /*
+     * Block until everything recorded so far is handed to the file system
+     */
+    public synchronized void flush() {
+        long request = ++mFlushRequests;
+        notifyAll();
+        try {
+            while (mFlushedRequests < request && !mStopped)
+                wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Write out everything recorded so far and stop the flusher, frames
+     * arriving later are dropped. Blocks until the file is closed, callers on
+     * the main thread use closeAsync() instead.
+     */
+    public void close() {
+        closeAsync(null);
+        try {
+            mFlusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Like close() but returns right away, the flusher writes out the rest on
+     * its own thread and then runs onClosed there, which may be null
+     */
+    public void closeAsync(Runnable onClosed) {
+        boolean stopped;
+        synchronized (this) {
+            mClosed = true;
+            stopped = mStopped;
+            if (!stopped)
+                mOnClosed = onClosed;
+            notifyAll();
+        }
+        if (stopped && onClosed != null)
+            onClosed.run();
+    }
+
+    public synchronized long getRecordedCount() {
+        return mRecordedCount;
+    }
+
+    public synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /*
+     * The disk error which stopped the recording, or null
+     */
+    public synchronized IOException getError() {
+        return mError;
+    }
+
+    private void flushLoop() {
+        boolean closing = false;
+        while (!closing) {
+            ByteBuffer out;
+            int rotateAt;
+            long flushRequests;
+            synchronized (this) {
+                if (!mClosed && mActive.position() < BUFFER_SIZE / 2 && mFlushRequests == mFlushedRequests) {
+                    try {
+                        wait(FLUSH_INTERVAL_MS);
+                    } catch (InterruptedException e) {
+                        mClosed = true;
+                    }
+                }
+                out = mActive;
+                mActive = mSpare;
+                mSpare = out;
+                rotateAt = mRotateAt;
+                mRotateAt = -1;
+                closing = mClosed;
+                flushRequests = mFlushRequests;
+            }
+
+            out.flip();
+            try {
+                if (rotateAt >= 0) {
+                    ByteBuffer tail = out.duplicate();
+                    out.limit(rotateAt);
+                    write(out);
+                    tail.position(rotateAt);
+                    closeSegment();
+                    write(tail);
+                } else {
+                    write(out);
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    mError = e;
+                }
+                closing = true;
+            }
+            out.clear();
+
+            synchronized (this) {
+                mFlushedRequests = flushRequests;
+                notifyAll();
+            }
+        }
+
+        try {
+            closeSegment();
+        } catch (IOException e) {
+            synchronized (this) {
+                if (mError == null)
+                    mError = e;
+            }
+        }
+        Runnable onClosed;
+        synchronized (this) {
+            mStopped = true;
+            onClosed = mOnClosed;
+            mOnClosed = null;
+            notifyAll();
+        }
+        if (onClosed != null)
+            onClosed.run();
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        if (!buffer.hasRemaining())
+            return;
+        if (mChannel == null)
+            openSegment();
+        while (buffer.hasRemaining())
+            mChannel.write(buffer);
+    }
+
+    private void openSegment() throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs())
+            throw new IOException("Cannot create " + mDirectory);
+
+        mSegmentIndex++;
+        File file = new File(mDirectory, String.format(Locale.US, "%s%06d%s",
+                SEGMENT_PREFIX, mSegmentIndex, SEGMENT_SUFFIX));
+        mChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis()).flip();
+        while (header.hasRemaining())
+            mChannel.write(header);
+
+        File[] segments = listSegments(mDirectory);
+        for (int i = 0; i < segments.length - mMaxSegments; i++) {
+            if (!segments[i].delete())
+                throw new IOException("Cannot delete " + segments[i]);
+        }
+    }
+
+    private void closeSegment() throws IOException {
+        if (mChannel != null) {
+            FileChannel channel = mChannel;
+            mChannel = null;
+            channel.close();
+        }
+    }
+
+    /*
+     * The segment files of a recording directory, oldest first
+     */
+    public static File[] listSegments(File directory) {
+        File[] files = directory.listFiles((dir, name) ->
+                name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX) && segmentIndex(name) > 0);
+        if (files == null)
+            return new File[0];
+        Arrays.sort(files, (a, b) -> Integer.compare(segmentIndex(a), segmentIndex(b)));
+        return files;
+    }
+
+    private static int segmentIndex(File file) {
+        return segmentIndex(file.getName());
+    }
+
+    private static int segmentIndex(String name) {
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                    name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.track;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Varint
+ * LEB128 varints as used by the recording formats, signed values are zigzag
+ * encoded first so small deltas of either sign stay one or two bytes. An
+ * instance is a read cursor over a buffer which notes, rather than throws,
+ * when a value runs past the limit.
+ */
+final class Varint {
+    private final ByteBuffer mBuffer;
+    private int mPos;
+    private boolean mTruncated;
+
+    Varint(ByteBuffer buffer, int position) {
+        mBuffer = buffer;
+        mPos = position;
+    }
+
+    int position() {
+        return mPos;
+    }
+
+    void position(int position) {
+        mPos = position;
+        mTruncated = false;
+    }
+
+    boolean hasRemaining() {
+        return mPos < mBuffer.limit();
+    }
+
+    /*
+     * True once a read ran past the end of the buffer, its value was 0
+     */
+    boolean isTruncated() {
+        return mTruncated;
+    }
+
+    int readByte() {
+        if (mPos >= mBuffer.limit()) {
+            mTruncated = true;
+            return 0;
+        }
+        return mBuffer.get(mPos++) & 0xFF;
+    }
+
+    long read() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (mPos >= mBuffer.limit()) {
+                mTruncated = true;
+                return 0;
+            }
+            byte b = mBuffer.get(mPos++);
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        mTruncated = true;
+        return 0;
+    }
+
+    /*
+     * Step over count values without decoding them
+     */
+    void skip(long count) {
+        while (count > 0) {
+            if (mPos >= mBuffer.limit()) {
+                mTruncated = true;
+                return;
+            }
+            if (mBuffer.get(mPos++) >= 0)
+                count--;
+        }
+    }
+
+    long readSigned() {
+        long value = read();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void write(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static void writeSigned(ByteBuffer buffer, long value) {
+        write(buffer, (value << 1) ^ (value >> 63));
+    }
+}
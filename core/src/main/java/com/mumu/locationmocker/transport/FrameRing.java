@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.transport;
+
+import com.mumu.locationmocker.engine.LocationSink;
+import com.mumu.locationmocker.scheduler.SimClock;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Frame Ring
+ * A ring of LocationFrames in a shared buffer, a mapped file or SharedMemory,
+ * written by one producer and polled by any number of consumers without a
+ * single IPC call per update.
+ *
+ *   offset  size  field
+ *        0     4  magic "JLMR"
+ *        4     4  version
+ *        8     4  capacity in frames
+ *       12     4  frame size
+ *       16     8  seqlock, odd while the writer is inside a frame
+ *       24     8  sequence number of the latest frame, -1 if none
+ *       64     -  capacity * frame size bytes of frames
+ *
+ * The seqlock lets a reader copy the latest frame and then detect whether the
+ * writer touched the ring meanwhile, in which case it simply reads again. The
+ * buffer is only reached through plain ByteBuffer accesses, Java 8 has nothing
+ * that orders them against another process, so the seqlock narrows the window
+ * but guarantees nothing. What a reader trusts is the frame itself: the ring
+ * stores a checksum of every frame in its last reserved word, and a copy whose
+ * checksum or sequence number does not match is read again.
+ */
+public class FrameRing {
+    public static final int MAGIC = 0x4A4C4D52;
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE = 64;
+
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_CAPACITY = 8;
+    private static final int OFFSET_FRAME_SIZE = 12;
+    private static final int OFFSET_SEQLOCK = 16;
+    private static final int OFFSET_LATEST = 24;
+    private static final int SPINS_BEFORE_YIELD = 64;
+
+    // last reserved word of a LocationFrame, checksum of the bytes before it
+    private static final int FRAME_CHECKSUM = LocationFrame.SIZE - 4;
+    private static final long CHECKSUM_SEED = 0x4A4C4D52L;
+    private static final long CHECKSUM_MIX = 0x9E3779B97F4A7C15L;
+
+    private final ByteBuffer mBuffer;
+    private final int mCapacity;
+    private long mNextSequence;
+
+    private FrameRing(ByteBuffer buffer, int capacity) {
+        mBuffer = buffer;
+        mCapacity = capacity;
+    }
+
+    public static int bytesFor(int capacity) {
+        return HEADER_SIZE + capacity * LocationFrame.SIZE;
+    }
+
+    /*
+     * Format the buffer as an empty ring, this is the writer side
+     */
+    public static FrameRing create(ByteBuffer buffer, int capacity) {
+        if (capacity <= 0 || buffer.capacity() < bytesFor(capacity))
+            throw new IllegalArgumentException("Buffer too small for " + capacity + " frames");
+
+        FrameRing ring = new FrameRing(buffer, capacity);
+        buffer.putInt(OFFSET_MAGIC, MAGIC);
+        buffer.putInt(OFFSET_VERSION, VERSION);
+        buffer.putInt(OFFSET_CAPACITY, capacity);
+        buffer.putInt(OFFSET_FRAME_SIZE, LocationFrame.SIZE);
+        buffer.putLong(OFFSET_SEQLOCK, 0);
+        buffer.putLong(OFFSET_LATEST, -1);
+        ring.mNextSequence = 0;
+        return ring;
+    }
+
+    /*
+     * Open a ring formatted by create, this is the reader side
+     */
+    public static FrameRing attach(ByteBuffer buffer) {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(OFFSET_MAGIC) != MAGIC
+                || buffer.getInt(OFFSET_VERSION) != VERSION
+                || buffer.getInt(OFFSET_FRAME_SIZE) != LocationFrame.SIZE)
+            throw new IllegalArgumentException("Not a frame ring");
+
+        int capacity = buffer.getInt(OFFSET_CAPACITY);
+        if (capacity <= 0 || buffer.capacity() < bytesFor(capacity))
+            throw new IllegalArgumentException("Truncated frame ring");
+        return new FrameRing(buffer, capacity);
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    // Writer, one thread at a time
+    public void write(long timestampNanos, double lat, double lng, double alt,
+                      float accuracy, float bearing, float speed) {
+        long sequence = mNextSequence++;
+        long lock = mBuffer.getLong(OFFSET_SEQLOCK);
+
+        int slot = slotOffset(sequence);
+
+        mBuffer.putLong(OFFSET_SEQLOCK, lock + 1);
+        LocationFrame.write(mBuffer, slot, sequence, timestampNanos,
+                lat, lng, alt, accuracy, bearing, speed);
+        mBuffer.putInt(slot + FRAME_CHECKSUM, checksum(mBuffer, slot));
+        mBuffer.putLong(OFFSET_LATEST, sequence);
+        mBuffer.putLong(OFFSET_SEQLOCK, lock + 2);
+    }
+
+    public LocationSink asSink(final SimClock clock) {
+        return (lat, lng, alt, accuracy, bearing, speed) -> {
+            synchronized (FrameRing.this) {
+                write(clock.elapsedRealtimeNanos(), lat, lng, alt, accuracy, bearing, speed);
+            }
+        };
+    }
+
+    // Readers
+    public long getLatestSequence() {
+        return mBuffer.getLong(OFFSET_LATEST);
+    }
+
+    /*
+     * Copy the latest frame into dst at offset, returns its sequence number or
+     * -1 if nothing was written yet
+     */
+    public long readLatest(ByteBuffer dst, int offset) {
+        int spins = 0;
+        while (true) {
+            long before = mBuffer.getLong(OFFSET_SEQLOCK);
+            if ((before & 1) == 0) {
+                long sequence = mBuffer.getLong(OFFSET_LATEST);
+                if (sequence < 0)
+                    return -1;
+                copyFrame(slotOffset(sequence), dst, offset);
+                if (mBuffer.getLong(OFFSET_SEQLOCK) == before && isIntact(dst, offset, sequence))
+                    return sequence;
+            }
+            if (++spins % SPINS_BEFORE_YIELD == 0)
+                Thread.yield();
+        }
+    }
+
+    /*
+     * Copy the frame with the given sequence number, returns false if it is not
+     * written yet or has already been overwritten
+     */
+    public boolean read(long sequence, ByteBuffer dst, int offset) {
+        if (sequence < 0)
+            return false;
+
+        int spins = 0;
+        while (true) {
+            long before = mBuffer.getLong(OFFSET_SEQLOCK);
+            if ((before & 1) == 0) {
+                long latest = mBuffer.getLong(OFFSET_LATEST);
+                if (sequence > latest || sequence <= latest - mCapacity)
+                    return false;
+                copyFrame(slotOffset(sequence), dst, offset);
+                if (mBuffer.getLong(OFFSET_SEQLOCK) == before && isIntact(dst, offset))
+                    return LocationFrame.getSequence(dst, offset) == sequence;
+            }
+            if (++spins % SPINS_BEFORE_YIELD == 0)
+                Thread.yield();
+        }
+    }
+
+    private int slotOffset(long sequence) {
+        return HEADER_SIZE + (int) (sequence % mCapacity) * LocationFrame.SIZE;
+    }
+
+    private void copyFrame(int from, ByteBuffer dst, int offset) {
+        for (int i = 0; i < LocationFrame.SIZE; i += 8)
+            dst.putLong(offset + i, mBuffer.getLong(from + i));
+    }
+
+    // a whole frame of any sequence number, not one half written
+    private static boolean isIntact(ByteBuffer frame, int offset) {
+        return LocationFrame.isValid(frame, offset)
+                && frame.getInt(offset + FRAME_CHECKSUM) == checksum(frame, offset);
+    }
+
+    private static boolean isIntact(ByteBuffer frame, int offset, long sequence) {
+        return isIntact(frame, offset) && LocationFrame.getSequence(frame, offset) == sequence;
+    }
+
+    private static int checksum(ByteBuffer frame, int offset) {
+        long hash = CHECKSUM_SEED;
+        for (int i = 0; i < FRAME_CHECKSUM - 4; i += 8)
+            hash = (hash ^ frame.getLong(offset + i)) * CHECKSUM_MIX;
+        hash = (hash ^ frame.getInt(offset + FRAME_CHECKSUM - 4)) * CHECKSUM_MIX;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.transport;
+
+import com.mumu.locationmocker.engine.LocationSink;
+import com.mumu.locationmocker.scheduler.SimClock;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*
+ * Frame Streamer
+ * Streams every location as a LocationFrame over a persistent connection. When
+ * the connection is down the location goes to the fallback sink instead, and
+ * a reconnect is tried on a later update with an exponential back off. The
+ * transport itself is supplied by a Connector, on device a LocalSocket.
+ */
+public class FrameStreamer implements LocationSink {
+    private static final long RETRY_DELAY_MIN_NANOS = 500000000L;
+    private static final long RETRY_DELAY_MAX_NANOS = 8000000000L;
+
+    private final Connector mConnector;
+    private final LocationSink mFallback;
+    private final SimClock mClock;
+    private final byte[] mFrame = new byte[LocationFrame.SIZE];
+    private final ByteBuffer mFrameBuffer = ByteBuffer.wrap(mFrame);
+
+    private Connection mConnection;
+    private long mSequence = 0;
+    private long mNextRetryNanos;
+    private long mRetryDelayNanos = RETRY_DELAY_MIN_NANOS;
+    private long mStreamedCount = 0;
+    private long mFallbackCount = 0;
+    private boolean mClosed = false;
+
+    public FrameStreamer(Connector connector, LocationSink fallback, SimClock clock) {
+        mConnector = connector;
+        mFallback = fallback;
+        mClock = clock;
+        mNextRetryNanos = clock.elapsedRealtimeNanos();
+    }
+
+    @Override
+    public void onLocation(double lat, double lng, double alt, float accuracy, float bearing, float speed) {
+        synchronized (this) {
+            long now = mClock.elapsedRealtimeNanos();
+            if (ensureConnected(now)) {
+                LocationFrame.write(mFrameBuffer, 0, mSequence, now, lat, lng, alt, accuracy, bearing, speed);
+                try {
+                    mConnection.write(mFrame, 0, LocationFrame.SIZE);
+                    mSequence++;
+                    mStreamedCount++;
+                    return;
+                } catch (IOException e) {
+                    disconnect(now);
+                }
+            }
+            mFallbackCount++;
+        }
+        mFallback.onLocation(lat, lng, alt, accuracy, bearing, speed);
+    }
+
+    private boolean ensureConnected(long now) {
+        if (mConnection != null)
+            return true;
+        if (mClosed || now < mNextRetryNanos)
+            return false;
+
+        try {
+            mConnection = mConnector.connect();
+            mRetryDelayNanos = RETRY_DELAY_MIN_NANOS;
+            return true;
+        } catch (IOException e) {
+            mNextRetryNanos = now + mRetryDelayNanos;
+            mRetryDelayNanos = Math.min(mRetryDelayNanos * 2, RETRY_DELAY_MAX_NANOS);
+            return false;
+        }
+    }
+
+    private void disconnect(long now) {
+        if (mConnection != null) {
+            mConnection.close();
+            mConnection = null;
+        }
+        mNextRetryNanos = now + mRetryDelayNanos;
+    }
+
+    public synchronized void close() {
+        mClosed = true;
+        disconnect(mClock.elapsedRealtimeNanos());
+    }
+
+    public synchronized boolean isConnected() {
+        return mConnection != null;
+    }
+
+    public synchronized long getStreamedCount() {
+        return mStreamedCount;
+    }
+
+    public synchronized long getFallbackCount() {
+        return mFallbackCount;
+    }
+
+    public interface Connection {
+        void write(byte[] buf, int offset, int length) throws IOException;
+
+        void close();
+    }
+
+    public interface Connector {
+        Connection connect() throws IOException;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2024 The Josh Tool Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mumu.locationmocker.transport;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Location Frame
+ * Fixed size binary layout of one location update, shared by every binary
+ * transport. All fields are big endian and written with absolute puts, so
+ * encoding into a reused buffer does not allocate.
+ *
+ *   offset  size  field
+ *        0     4  magic "JLMF"
+ *        4     2  version
+ *        6     2  reserved
+ *        8     8  sequence number
+ *       16     8  elapsed realtime of the fix, nanoseconds
+ *       24     8  latitude
+ *       32     8  longitude
+ *       40     8  altitude
+ *       48     4  accuracy
+ *       52     4  bearing
+ *       56     4  speed
+ *       60     4  reserved
+ */
+public final class LocationFrame {
+    public static final int MAGIC = 0x4A4C4D46;
+    public static final short VERSION = 1;
+    public static final int SIZE = 64;
+
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_SEQUENCE = 8;
+    private static final int OFFSET_TIMESTAMP = 16;
+    private static final int OFFSET_LAT = 24;
+    private static final int OFFSET_LNG = 32;
+    private static final int OFFSET_ALT = 40;
+    private static final int OFFSET_ACCURACY = 48;
+    private static final int OFFSET_BEARING = 52;
+    private static final int OFFSET_SPEED = 56;
+
+    private LocationFrame() {
+    }
+
+    public static void write(ByteBuffer buf, int offset, long sequence, long timestampNanos,
+                             double lat, double lng, double alt, float accuracy, float bearing, float speed) {
+        buf.putInt(offset + OFFSET_MAGIC, MAGIC);
+        buf.putShort(offset + OFFSET_VERSION, VERSION);
+        buf.putShort(offset + OFFSET_VERSION + 2, (short) 0);
+        buf.putLong(offset + OFFSET_SEQUENCE, sequence);
+        buf.putLong(offset + OFFSET_TIMESTAMP, timestampNanos);
+        buf.putDouble(offset + OFFSET_LAT, lat);
+        buf.putDouble(offset + OFFSET_LNG, lng);
+        buf.putDouble(offset + OFFSET_ALT, alt);
+        buf.putFloat(offset + OFFSET_ACCURACY, accuracy);
+        buf.putFloat(offset + OFFSET_BEARING, bearing);
+        buf.putFloat(offset + OFFSET_SPEED, speed);
+        buf.putInt(offset + OFFSET_SPEED + 4, 0);
+    }
+
+    public static boolean isValid(ByteBuffer buf, int offset) {
+        return buf.getInt(offset + OFFSET_MAGIC) == MAGIC && buf.getShort(offset + OFFSET_VERSION) == VERSION;
+    }
+
+    public static long getSequence(ByteBuffer buf, int offset) {
+        return buf.getLong(offset + OFFSET_SEQUENCE);
+    }
+
+    public static long getTimestampNanos(ByteBuffer buf, int offset) {
+        return buf.getLong(offset + OFFSET_TIMESTAMP);
+    }
+
+    public static double getLatitude(ByteBuffer buf, int offset) {
+        return buf.getDouble(offset + OFFSET_LAT);
+    }
+
+    public static double getLongitude(ByteBuffer buf, int offset) {
+        return buf.getDouble(offset + OFFSET_LNG);
+    }
+
+    public static double getAltitude(ByteBuffer buf, int offset) {
+        return buf.getDouble(offset + OFFSET_ALT);
+    }
+
+    public static float getAccuracy(ByteBuffer buf, int offset) {
+        return buf.getFloat(offset + OFFSET_ACCURACY);
+    }
+
+    public static float getBearing(ByteBuffer buf, int offset) {
+        return buf.getFloat(offset + OFFSET_BEARING);
+    }
+
+    public static float getSpeed(ByteBuffer buf, int offset) {
+        return buf.getFloat(offset + OFFSET_SPEED);
+    }
+}
@@ -0,0 +1,26 @@
+package com.mumu.locationmocker.engine;
+
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.*;
+
+public class AliasSamplerTest {
+    @Test
+    public void sample_followsWeights() {
+        double[] weights = {0.92, 0.0, 0.02, 0.02, 0.01, 0.01, 0.01, 0.01};
+        AliasSampler sampler = new AliasSampler(weights.length);
+        sampler.build(weights);
+
+        SplittableRandom random = new SplittableRandom(7);
+        int[] counts = new int[weights.length];
+        int rolls = 1000000;
+        for (int i = 0; i < rolls; i++)
+            counts[sampler.sample(random)]++;
+
+        assertEquals(0, counts[1]);
+        for (int i = 0; i < weights.length; i++)
+            assertEquals(weights[i], counts[i] / (double) rolls, 0.002);
+    }
+}
@@ -0,0 +1,36 @@
+package com.mumu.locationmocker.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+
+import static org.junit.Assert.*;
+
+public class CoalescingSinkTest {
+    @Test
+    public void burst_collapsesToLatest() {
+        ArrayDeque<Runnable> looper = new ArrayDeque<>();
+        double[] delivered = new double[2];
+        int[] count = new int[1];
+        CoalescingSink sink = new CoalescingSink((lat, lng, alt, acc, bear, spd) -> {
+            delivered[0] = lat;
+            delivered[1] = lng;
+            count[0]++;
+        }, looper::add);
+
+        for (int i = 0; i < 100; i++)
+            sink.onLocation(25.0 + i, 121.0 + i, 0, 1, 0, 0);
+        assertEquals(1, looper.size());
+
+        looper.poll().run();
+        assertEquals(1, count[0]);
+        assertEquals(124.0, delivered[0], 0.0);
+        assertEquals(220.0, delivered[1], 0.0);
+        assertEquals(100, sink.getOfferedCount());
+        assertEquals(1, sink.getDeliveredCount());
+
+        // the slot is free again once drained
+        sink.onLocation(1, 2, 0, 1, 0, 0);
+        assertEquals(1, looper.size());
+    }
+}
@@ -0,0 +1,53 @@
+package com.mumu.locationmocker.engine;
+
+import com.mumu.locationmocker.geo.LocalFence;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CoverageGridTest {
+    private static final double METERS_PER_DEGREE = 111195.08;
+
+    @Test
+    public void visit_countsInsideCellsOnce() {
+        CoverageGrid grid = new CoverageGrid(new LocalFence(25.0, 121.0, 320));
+        assertEquals(10.0, grid.getCellSize(), 1e-9);
+
+        assertTrue(grid.visit(25.0, 121.0));
+        assertFalse(grid.visit(25.0, 121.0));
+        // the corner of the square is outside the circle
+        assertFalse(grid.visit(25.0 - 315 / METERS_PER_DEGREE, 121.0 - 315 / METERS_PER_DEGREE / 0.9063));
+        assertEquals(1, grid.getVisitedCount());
+
+        int cell = grid.cellOf(25.0, 121.0);
+        assertTrue(grid.isVisited(cell));
+        assertEquals(cell + CoverageGrid.GRID_SIZE, grid.neighbor(cell, WalkDirection.NORTH));
+        assertEquals(cell + 1, grid.neighbor(cell, WalkDirection.EAST));
+        assertEquals(-1, grid.neighbor(cell, WalkDirection.STAY));
+    }
+
+    @Test
+    public void coverageWalker_coversMoreThanRandomWalk() {
+        assertTrue(walk(true) > walk(false) * 1.2);
+    }
+
+    private double walk(boolean directed) {
+        LocalFence fence = new LocalFence(25.0, 121.0, 100);
+        CoverageGrid measured = new CoverageGrid(fence);
+        IncubatingWalker walker = new IncubatingWalker(fence, new HumanWalkSimulator(3),
+                directed ? new CoverageGrid(fence) : null);
+        double cosLat = Math.cos(Math.toRadians(25.0));
+        double[] step = new double[2];
+        double lat = 25.0, lng = 121.0;
+
+        for (int i = 0; i < 3000; i++) {
+            measured.visit(lat, lng);
+            if (walker.nextStep(lat, lng, step)) {
+                lat += 3.0 * step[1] / METERS_PER_DEGREE;
+                lng += 3.0 * step[0] / METERS_PER_DEGREE / cosLat;
+            }
+        }
+        return measured.getCoverage();
+    }
+}
@@ -0,0 +1,320 @@
+package com.mumu.locationmocker.engine;
+
+import com.mumu.locationmocker.geo.GeoMath;
+import com.mumu.locationmocker.scheduler.TickScheduler;
+import com.mumu.locationmocker.scheduler.TickTask;
+import com.mumu.locationmocker.scheduler.VirtualClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class LocationEngineTest {
+    private static final long SECOND = 1000000000L;
+    private TickScheduler mScheduler;
+    private LocationEngine mEngine;
+    private long mNow;
+    private int mEmitted;
+
+    @Before
+    public void setUp() {
+        mScheduler = new TickScheduler(new VirtualClock());
+        mEngine = new LocationEngine((lat, lng, alt, acc, bear, spd) -> mEmitted++,
+                () -> mNow, mScheduler);
+        mEngine.setLatLng(25.0, 121.0);
+    }
+
+    @After
+    public void tearDown() {
+        mEngine.release();
+        mScheduler.shutdown();
+    }
+
+    @Test
+    public void navigation_dependsOnlyOnElapsedTime() {
+        boolean[] done = new boolean[1];
+        mEngine.navigateTo(25.001, 121.0, false, () -> done[0] = true);
+
+        // default pace is 0.00003 degree of latitude per second, so 0.001 degree north takes 33.3 s
+        mNow = 10 * SECOND;
+        assertTrue(mEngine.navigationStep());
+        assertEquals(25.0003, mEngine.getLatitude(), 1e-9);
+        assertFalse(done[0]);
+
+        mNow = 34 * SECOND;
+        mEngine.navigationStep();
+        assertEquals(25.001, mEngine.getLatitude(), 1e-9);
+        assertTrue(done[0]);
+        assertFalse(mEngine.isNavigating());
+        assertEquals(2, mEmitted);
+    }
+
+    @Test
+    public void walk_interruptsInterruptibleNavigation() {
+        mEngine.navigateTo(26.0, 121.0, true, null);
+        mEngine.walkPace(WalkDirection.EAST, 1.0);
+        assertFalse(mEngine.isNavigating());
+        assertTrue(mEngine.getLongitude() > 121.0);
+        assertEquals(25.0, mEngine.getLatitude(), 1e-12);
+    }
+
+    @Test
+    public void position_neverTorn() throws Exception {
+        // every published point has lat - 25 == lng - 121
+        Thread reader = new Thread(() -> {
+            for (int i = 0; i < 200000; i++) {
+                LocationSnapshot p = mEngine.getPosition();
+                assertEquals(p.latitude - 25.0, p.longitude - 121.0, 1e-9);
+            }
+        });
+        Throwable[] failure = new Throwable[1];
+        reader.setUncaughtExceptionHandler((t, e) -> failure[0] = e);
+        reader.start();
+        for (int i = 0; reader.isAlive(); i++)
+            mEngine.setLatLng(25.0 + i % 2, 121.0 + i % 2);
+        reader.join();
+        assertNull(failure[0]);
+    }
+
+    @Test
+    public void seededRuns_areIdentical() {
+        double[] first = runSeeded(1234);
+        double[] second = runSeeded(1234);
+        assertArrayEquals(first, second, 0.0);
+        assertFalse(Arrays.equals(first, runSeeded(4321)));
+    }
+
+    private double[] runSeeded(long seed) {
+        double[] track = new double[3000];
+        int[] index = new int[1];
+        LocationEngine engine = new LocationEngine((lat, lng, alt, acc, bear, spd) -> {
+            track[index[0]++] = lat;
+            track[index[0]++] = lng;
+            track[index[0]++] = acc + bear;
+        }, () -> mNow, mScheduler, seed);
+        HumanWalkSimulator simulator = engine.createWalkSimulator();
+        for (int i = 0; i < 1000; i++)
+            engine.walkPace(simulator.getNextDirection(), 0.8);
+        return track;
+    }
+
+    @Test
+    public void virtualSession_navigatesThenWalksForEightHours() {
+        VirtualClock clock = new VirtualClock();
+        TickScheduler scheduler = new TickScheduler(clock);
+        int[] emitted = new int[1];
+        LocationEngine engine = new LocationEngine((lat, lng, alt, acc, bear, spd) -> emitted[0]++,
+                clock, scheduler, 42);
+        engine.setLatLng(25.0, 121.0);
+        engine.setRepeatInterval(500);
+
+        boolean[] done = new boolean[1];
+        engine.navigateTo(25.01, 121.01, false, () -> done[0] = true);
+        scheduler.advance(3600 * 1000L);
+        assertTrue(done[0]);
+        assertEquals(25.01, engine.getLatitude(), 1e-9);
+
+        HumanWalkSimulator simulator = engine.createWalkSimulator();
+        TickTask walk = scheduler.schedule("Walk",
+                () -> engine.walkPace(simulator.getNextDirection(), 0.8), 0, 1000);
+        scheduler.advance(8 * 3600 * 1000L);
+        assertEquals(8 * 3600 + 1, walk.getRunCount());
+        assertEquals(2, scheduler.getTaskCount());
+        assertTrue(emitted[0] > 8 * 3600 * 2);
+        engine.release();
+    }
+
+    @Test
+    public void incubating_staysInsideRadius() {
+        VirtualClock clock = new VirtualClock();
+        TickScheduler scheduler = new TickScheduler(clock);
+        double[] farthest = new double[1];
+        LocationEngine engine = new LocationEngine((lat, lng, alt, acc, bear, spd) ->
+                farthest[0] = Math.max(farthest[0], GeoMath.haversine(25.0, 121.0, lat, lng)),
+                clock, scheduler, 7);
+        engine.setLatLng(25.0, 121.0);
+
+        engine.startIncubating(100);
+        scheduler.advance(8 * 3600 * 1000L);
+        assertTrue(engine.isIncubating());
+        assertTrue(farthest[0] > 70);
+        // one pace is a few meters, it may cross the line by that much
+        assertTrue(farthest[0] < 105);
+
+        engine.navigateTo(25.0, 121.0, false, null);
+        assertFalse(engine.isIncubating());
+        engine.release();
+    }
+
+    @Test
+    public void paceProfiles_keepEachManagersStep() {
+        // intent: 0.000002 + shift degrees times 10, no bearing jitter
+        mEngine.setPosition(25.0, 121.0, 0, 5.0f, 30.0f, 0);
+        mEngine.walk(0.0, 1.0);
+        assertEquals(0.00002, mEngine.getLatitude() - 25.0, 0.000004);
+        assertEquals(30.0f, mEngine.getBearing(), 0.0f);
+
+        // fake: 0.000038 + shift degrees at speed 1, bearing wanders within 0 ~ 10
+        mEngine.setPaceProfile(PaceProfile.FAKE);
+        mEngine.setPosition(25.0, 121.0, 0, 5.0f, 0.0f, 0);
+        for (int i = 0; i < 10; i++) {
+            double lat = mEngine.getLatitude();
+            mEngine.walk(0.0, 1.0);
+            assertEquals(0.000038, mEngine.getLatitude() - lat, 0.000003);
+            assertTrue(mEngine.getBearing() >= 0.0f && mEngine.getBearing() <= 10.0f);
+        }
+    }
+
+    @Test
+    public void walk_sameGroundDistanceAtAnyLatitude() {
+        double equator = walkEast(0.0);
+        assertEquals(equator, walkEast(60.0), equator * 1e-4);
+        assertEquals(equator, walkEast(-45.0), equator * 1e-4);
+    }
+
+    private double walkEast(double lat) {
+        // the same seed gives the same pace shift
+        LocationEngine engine = new LocationEngine((la, ln, alt, acc, bear, spd) -> { },
+                () -> mNow, mScheduler, 5);
+        engine.setPosition(lat, 121.0, 0, 5.0f, 0, 0);
+        engine.walk(1.0, 0.0);
+        return GeoMath.haversine(lat, 121.0, engine.getLatitude(), engine.getLongitude());
+    }
+
+    @Test
+    public void pilotTimeline_followsGreatCircle() {
+        // Taipei to Tokyo, about 2100 km
+        double length = GeoMath.haversine(25.0335, 121.5642, 35.6812, 139.7671);
+        PilotTimeline timeline = new PilotTimeline(25.0335, 121.5642, 35.6812, 139.7671, 1000, 0);
+        assertEquals(length, timeline.getLength(), 1e-6);
+
+        double[] position = new double[4];
+        timeline.positionAt(length / 2, position, 0);
+        GeoMath.destination(25.0335, 121.5642, GeoMath.initialBearing(25.0335, 121.5642, 35.6812, 139.7671),
+                length / 2, position, 2);
+        assertEquals(position[2], position[0], 1e-9);
+        assertEquals(position[3], position[1], 1e-9);
+
+        assertTrue(timeline.isArrived(timeline.distanceAt(3000 * SECOND)));
+        timeline.positionAt(timeline.getLength(), position, 0);
+        assertEquals(35.6812, position[0], 0.0);
+        assertEquals(139.7671, position[1], 0.0);
+    }
+
+    @Test
+    public void routePath_walksThroughEveryWaypoint() {
+        double[] lats = {25.0, 25.1, 25.1, 24.0};
+        double[] lngs = {121.0, 121.0, 121.1, 121.1};
+        RoutePath route = new RoutePath(lats, lngs);
+
+        double firstLeg = GeoMath.haversine(25.0, 121.0, 25.1, 121.0);
+        double secondLeg = GeoMath.haversine(25.1, 121.0, 25.1, 121.1);
+        assertTrue(route.getPointCount() > 4);
+        assertTrue(route.getLength() > firstLeg + secondLeg);
+
+        double[] position = new double[2];
+        route.positionAt(firstLeg, position, 0);
+        assertEquals(25.1, position[0], 1e-9);
+        assertEquals(121.0, position[1], 1e-9);
+        route.positionAt(firstLeg + secondLeg / 2, position, 0);
+        assertEquals(121.05, position[1], 1e-6);
+        route.positionAt(route.getLength() + 1, position, 0);
+        assertEquals(24.0, position[0], 0.0);
+        assertEquals(121.1, position[1], 0.0);
+    }
+
+    @Test
+    public void navigateRoute_arrivesAtLastWaypoint() {
+        VirtualClock clock = new VirtualClock();
+        TickScheduler scheduler = new TickScheduler(clock);
+        LocationEngine engine = new LocationEngine((lat, lng, alt, acc, bear, spd) -> { }, clock, scheduler, 1);
+        engine.setLatLng(25.0, 121.0);
+
+        boolean[] done = new boolean[1];
+        engine.navigateRoute(new double[] {25.001, 25.001}, new double[] {121.0, 121.001}, false,
+                () -> done[0] = true);
+        scheduler.advance(120 * 1000L);
+        assertTrue(done[0]);
+        assertEquals(25.001, engine.getLatitude(), 0.0);
+        assertEquals(121.001, engine.getLongitude(), 0.0);
+        assertEquals(0, scheduler.getTaskCount());
+    }
+
+    @Test
+    public void playback_keepsRecordedTimingScaledBySpeed() {
+        VirtualClock clock = new VirtualClock();
+        TickScheduler scheduler = new TickScheduler(clock);
+        LocationEngine engine = new LocationEngine((lat, lng, alt, acc, bear, spd) -> { }, clock, scheduler, 1);
+
+        // a frame every second for 1000 s, more than one read-ahead window
+        boolean[] done = new boolean[1];
+        engine.setPlaybackSpeed(2.0);
+        engine.startPlayback(new SecondsSource(1000), () -> done[0] = true);
+        scheduler.advance(100 * 1000L);
+        assertEquals(25.0 + 200 * 1e-5, engine.getLatitude(), 1e-9);
+
+        engine.setPlaybackSpeed(4.0);
+        scheduler.advance(100 * 1000L);
+        assertEquals(25.0 + 600 * 1e-5, engine.getLatitude(), 1e-9);
+        assertFalse(done[0]);
+
+        scheduler.advance(100 * 1000L);
+        assertTrue(done[0]);
+        assertFalse(engine.isPlaying());
+        assertEquals(25.0 + 999 * 1e-5, engine.getLatitude(), 1e-9);
+        assertEquals(0, scheduler.getTaskCount());
+    }
+
+    private static class SecondsSource implements PlaybackSource {
+        private final int mFrames;
+        private int mFrame = -1;
+
+        SecondsSource(int frames) {
+            mFrames = frames;
+        }
+
+        @Override
+        public boolean next() {
+            return ++mFrame < mFrames;
+        }
+
+        @Override
+        public long getTimeMillis() {
+            return 5000 + mFrame * 1000L;
+        }
+
+        @Override
+        public double getLatitude() {
+            return 25.0 + mFrame * 1e-5;
+        }
+
+        @Override
+        public double getLongitude() {
+            return 121.0;
+        }
+
+        @Override
+        public double getAltitude() {
+            return 0;
+        }
+
+        @Override
+        public float getAccuracy() {
+            return 5.0f;
+        }
+
+        @Override
+        public float getBearing() {
+            return 0;
+        }
+
+        @Override
+        public float getSpeed() {
+            return 1.0f;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.mumu.locationmocker.engine;
+
+import com.mumu.locationmocker.scheduler.VirtualClock;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PlaybackTimelineTest {
+    // frame i is at latitude i
+    private static class ArraySource implements PlaybackSource {
+        private final long[] mTimes;
+        private int mIndex = -1;
+
+        ArraySource(long[] times) {
+            mTimes = times;
+        }
+
+        int getReadCount() {
+            return mIndex + 1;
+        }
+
+        @Override
+        public boolean next() {
+            if (mIndex + 1 >= mTimes.length)
+                return false;
+            mIndex++;
+            return true;
+        }
+
+        @Override
+        public long getTimeMillis() {
+            return mTimes[mIndex];
+        }
+
+        @Override
+        public double getLatitude() {
+            return mIndex;
+        }
+
+        @Override
+        public double getLongitude() {
+            return 121.0;
+        }
+
+        @Override
+        public double getAltitude() {
+            return 0;
+        }
+
+        @Override
+        public float getAccuracy() {
+            return 5.0f;
+        }
+
+        @Override
+        public float getBearing() {
+            return 0;
+        }
+
+        @Override
+        public float getSpeed() {
+            return 1.0f;
+        }
+    }
+
+    private static long[] everySecond(int frames) {
+        long[] times = new long[frames];
+        for (int i = 0; i < frames; i++)
+            times[i] = 1700000000000L + i * 1000L;
+        return times;
+    }
+
+    @Test
+    public void frames_playAcrossWindowRefills() {
+        int frames = 3 * PlaybackTimeline.WINDOW + 10;
+        ArraySource source = new ArraySource(everySecond(frames));
+        VirtualClock clock = new VirtualClock();
+        PlaybackTimeline timeline = new PlaybackTimeline(source, 1.0, clock.elapsedRealtimeNanos());
+
+        // only one window is decoded ahead
+        assertEquals(PlaybackTimeline.WINDOW, source.getReadCount());
+
+        assertTrue(timeline.advance(clock.elapsedRealtimeNanos()));
+        assertEquals(0.0, timeline.getLatitude(), 0.0);
+        for (int i = 1; i < frames; i++) {
+            clock.advance(1000);
+            assertTrue(timeline.advance(clock.elapsedRealtimeNanos()));
+            assertEquals(i, timeline.getLatitude(), 0.0);
+            // the next window is decoded once this one is used up
+            assertTrue(source.getReadCount() <= i + 1 + PlaybackTimeline.WINDOW);
+        }
+        assertEquals(frames, source.getReadCount());
+
+        clock.advance(1000);
+        assertFalse(timeline.advance(clock.elapsedRealtimeNanos()));
+        assertTrue(timeline.isFinished());
+    }
+
+    @Test
+    public void slowTick_skipsFramesOverSeveralWindows() {
+        int frames = 3 * PlaybackTimeline.WINDOW;
+        VirtualClock clock = new VirtualClock();
+        PlaybackTimeline timeline = new PlaybackTimeline(new ArraySource(everySecond(frames)),
+                1.0, clock.elapsedRealtimeNanos());
+
+        clock.advance(600 * 1000);
+        assertTrue(timeline.advance(clock.elapsedRealtimeNanos()));
+        assertEquals(600.0, timeline.getLatitude(), 0.0);
+        assertFalse(timeline.isFinished());
+    }
+
+    @Test
+    public void longGaps_areShortenedToMaxGap() {
+        long start = 1700000000000L;
+        long[] times = {
+                start,
+                start + 1000,
+                start + 1000 + 3600 * 1000, // recording paused for an hour
+                start + 2000 + 3600 * 1000,
+                start, // device rebooted, time went backwards
+        };
+        VirtualClock clock = new VirtualClock();
+        PlaybackTimeline timeline = new PlaybackTimeline(new ArraySource(times), 1.0,
+                clock.elapsedRealtimeNanos());
+
+        clock.advance(1000);
+        assertTrue(timeline.advance(clock.elapsedRealtimeNanos()));
+        assertEquals(1.0, timeline.getLatitude(), 0.0);
+
+        clock.advance(PlaybackTimeline.MAX_GAP_MS - 1);
+        assertFalse(timeline.advance(clock.elapsedRealtimeNanos()));
+        clock.advance(1);
+        assertTrue(timeline.advance(clock.elapsedRealtimeNanos()));
+        assertEquals(2.0, timeline.getLatitude(), 0.0);
+
+        // the backwards frame counts as no gap and is due with frame 3
+        clock.advance(1000);
+        assertTrue(timeline.advance(clock.elapsedRealtimeNanos()));
+        assertEquals(4.0, timeline.getLatitude(), 0.0);
+        assertTrue(timeline.isFinished());
+    }
+}
@@ -0,0 +1,46 @@
+package com.mumu.locationmocker.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PushThrottleTest {
+    private static final long MS = 1000000L;
+
+    @Test
+    public void idle_onlyHeartbeats() {
+        PushThrottle throttle = new PushThrottle(1000, 5000, 1.0);
+        assertTrue(throttle.shouldPush(0, 25.0, 121.0));
+        throttle.onPushed(0, 25.0, 121.0);
+
+        assertFalse(throttle.shouldPush(1000 * MS, 25.0, 121.0));
+        assertFalse(throttle.shouldPush(4999 * MS, 25.0, 121.0));
+        assertTrue(throttle.shouldPush(5000 * MS, 25.0, 121.0));
+    }
+
+    @Test
+    public void smallMoves_pushAtCadence() {
+        PushThrottle throttle = new PushThrottle(1000, 5000, 1.0);
+        throttle.onPushed(0, 25.0, 121.0);
+
+        // about 0.5 m north, below the threshold
+        assertFalse(throttle.shouldPush(500 * MS, 25.000005, 121.0));
+        assertTrue(throttle.shouldPush(1000 * MS, 25.000005, 121.0));
+
+        throttle.reset();
+        assertTrue(throttle.shouldPush(1 * MS, 25.0, 121.0));
+    }
+
+    @Test
+    public void thresholdMove_pushesRightAfterLastPush() {
+        // network settings, a 5 s cadence must not hold back a real move
+        PushThrottle throttle = new PushThrottle(5000, 20000, 10.0);
+        throttle.onPushed(0, 25.0, 121.0);
+
+        // about 110 m north
+        assertFalse(throttle.shouldPush(50 * MS, 25.001, 121.0));
+        assertTrue(throttle.shouldPush(250 * MS, 25.001, 121.0));
+        throttle.onPushed(250 * MS, 25.001, 121.0);
+        assertFalse(throttle.shouldPush(500 * MS, 25.00101, 121.0));
+    }
+}
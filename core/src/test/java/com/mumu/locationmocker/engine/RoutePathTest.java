@@ -0,0 +1,86 @@
+package com.mumu.locationmocker.engine;
+
+import com.mumu.locationmocker.geo.GeoMath;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RoutePathTest {
+    private static final double[] LATS = {25.0, 25.02, 25.0201, 25.05};
+    private static final double[] LNGS = {121.0, 121.0, 121.0001, 121.03};
+
+    @Test
+    public void legs_areDensifiedToMaxSegment() {
+        RoutePath route = new RoutePath(LATS, LNGS);
+
+        // every leg gets ceil(length / MAX_SEGMENT) pieces, at least one
+        int expected = 1;
+        for (int i = 1; i < LATS.length; i++) {
+            double leg = GeoMath.haversine(LATS[i - 1], LNGS[i - 1], LATS[i], LNGS[i]);
+            expected += Math.max(1, (int) Math.ceil(leg / RoutePath.MAX_SEGMENT));
+        }
+        assertEquals(expected, route.getPointCount());
+
+        // no two neighbouring points further apart than a segment
+        double[] previous = new double[2];
+        double[] point = new double[2];
+        route.positionAt(0, previous, 0);
+        for (double d = 50; d <= route.getLength(); d += 50) {
+            route.positionAt(d, point, 0);
+            assertTrue(GeoMath.haversine(previous[0], previous[1], point[0], point[1]) < 50.5);
+            previous[0] = point[0];
+            previous[1] = point[1];
+        }
+    }
+
+    @Test
+    public void positionAt_findsTheLegAlongTheWholeRoute() {
+        RoutePath route = new RoutePath(LATS, LNGS);
+        double[] out = new double[2];
+        double[] expected = new double[2];
+
+        double start = 0;
+        for (int i = 1; i < LATS.length; i++) {
+            GreatCirclePath leg = new GreatCirclePath(LATS[i - 1], LNGS[i - 1], LATS[i], LNGS[i]);
+
+            // waypoints sit exactly on the prefix sums
+            route.positionAt(start + leg.getLength(), out, 0);
+            assertEquals(LATS[i], out[0], 1e-6);
+            assertEquals(LNGS[i], out[1], 1e-6);
+
+            for (int step = 1; step < 10; step++) {
+                double along = leg.getLength() * step / 10;
+                route.positionAt(start + along, out, 0);
+                leg.positionAt(along, expected, 0);
+                assertTrue(GeoMath.haversine(out[0], out[1], expected[0], expected[1]) < 0.5);
+            }
+            start += leg.getLength();
+        }
+        assertEquals(start, route.getLength(), 0.01);
+    }
+
+    @Test
+    public void positionAt_clampsToRouteEnds() {
+        RoutePath route = new RoutePath(LATS, LNGS);
+        double[] out = new double[4];
+
+        route.positionAt(-100, out, 0);
+        route.positionAt(route.getLength() + 1000, out, 2);
+        assertEquals(LATS[0], out[0], 0.0);
+        assertEquals(LNGS[0], out[1], 0.0);
+        assertEquals(LATS[LATS.length - 1], out[2], 1e-9);
+        assertEquals(LNGS[LNGS.length - 1], out[3], 1e-9);
+
+        RoutePath single = new RoutePath(new double[]{25.0}, new double[]{121.0});
+        assertEquals(0, single.getLength(), 0.0);
+        single.positionAt(10, out, 0);
+        assertEquals(25.0, out[0], 0.0);
+        assertEquals(121.0, out[1], 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mismatchedArrays_areRejected() {
+        new RoutePath(new double[]{25.0, 25.1}, new double[]{121.0});
+    }
+}
@@ -0,0 +1,58 @@
+package com.mumu.locationmocker.geo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GeoMathTest {
+    // Taipei 101 and Taipei Main Station
+    private static final double LAT1 = 25.0335, LNG1 = 121.5642;
+    private static final double LAT2 = 25.0478, LNG2 = 121.5170;
+
+    @Test
+    public void distances_agree() {
+        double vincenty = GeoMath.vincenty(LAT1, LNG1, LAT2, LNG2);
+        assertEquals(5000, vincenty, 100);
+        assertEquals(vincenty, GeoMath.haversine(LAT1, LNG1, LAT2, LNG2), vincenty * 0.005);
+        assertEquals(vincenty, GeoMath.equirectangular(LAT1, LNG1, LAT2, LNG2), vincenty * 0.005);
+        assertEquals(0.0, GeoMath.vincenty(LAT1, LNG1, LAT1, LNG1), 0.0);
+    }
+
+    @Test
+    public void vincenty_matchesKnownGeodesic() {
+        // one degree of latitude at the equator on WGS84
+        assertEquals(110574.389, GeoMath.vincenty(0, 0, 1, 0), 0.01);
+    }
+
+    @Test
+    public void destination_roundTrips() {
+        double[] out = new double[2];
+        double bearing = GeoMath.initialBearing(LAT1, LNG1, LAT2, LNG2);
+        double distance = GeoMath.haversine(LAT1, LNG1, LAT2, LNG2);
+        GeoMath.destination(LAT1, LNG1, bearing, distance, out, 0);
+        assertEquals(LAT2, out[0], 1e-9);
+        assertEquals(LNG2, out[1], 1e-9);
+    }
+
+    @Test
+    public void enuFrame_longitudeScaleStaysWithinPpm() {
+        // walk north from 60 degrees in 1 m steps, the frame lags behind by up to one anchor
+        EnuFrame frame = new EnuFrame();
+        double lat = 60.0;
+        for (int i = 0; i < 5000; i++) {
+            frame.ensureAnchor(lat);
+            double truth = 1.0 / (GeoMath.METERS_PER_DEGREE * Math.cos(Math.toRadians(lat)));
+            assertEquals(truth, frame.longitudeDelta(1.0), truth * 5e-6);
+            lat += frame.latitudeDelta(1.0);
+        }
+        assertTrue(frame.getAnchorCount() > 1);
+    }
+
+    @Test
+    public void bearing_isNormalized() {
+        assertEquals(0.0, GeoMath.initialBearing(0, 0, 1, 0), 1e-9);
+        assertEquals(90.0, GeoMath.initialBearing(0, 0, 0, 1), 1e-9);
+        assertEquals(270.0, GeoMath.initialBearing(0, 0, 0, -1), 1e-9);
+        assertEquals(-179.0, GeoMath.normalizeLongitude(181.0), 1e-9);
+    }
+}
@@ -0,0 +1,32 @@
+package com.mumu.locationmocker.scheduler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TickSchedulerTest {
+    private static final long HOUR_MS = 3600 * 1000L;
+
+    @Test
+    public void virtual_runsEightHoursAtOnce() {
+        VirtualClock clock = new VirtualClock();
+        TickScheduler scheduler = new TickScheduler(clock);
+        long[] lastRun = new long[1];
+        TickTask task = scheduler.schedule("Soak", () -> lastRun[0] = clock.elapsedRealtimeNanos(), 0, 1000);
+        TickTask once = scheduler.scheduleOnce("Once", () -> { }, 1500);
+
+        scheduler.advance(8 * HOUR_MS);
+        assertEquals(8 * 3600 + 1, task.getRunCount());
+        assertEquals(0, task.getOverrunCount());
+        assertEquals(0, task.getMaxLatenessMs());
+        assertEquals(1, once.getRunCount());
+        assertEquals(8 * HOUR_MS * 1000000L, lastRun[0]);
+        assertEquals(8 * HOUR_MS * 1000000L, clock.elapsedRealtimeNanos());
+        assertEquals(1, scheduler.getTaskCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void real_cannotAdvance() {
+        new TickScheduler().advance(1);
+    }
+}
@@ -0,0 +1,89 @@
+package com.mumu.locationmocker.system;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class PropertyCacheTest {
+    @Test
+    public void parse_getpropDump() {
+        Map<String, String> props = PropertyCache.parse(
+                "[ro.build.version.sdk]: [35]\n" +
+                "[persist.sys.empty]: []\n" +
+                "[ro.multi.line]: [first\n" +
+                "second]\n" +
+                "garbage\n");
+        assertEquals("35", props.get("ro.build.version.sdk"));
+        assertEquals("", props.get("persist.sys.empty"));
+        assertEquals("first\nsecond", props.get("ro.multi.line"));
+        assertEquals(3, props.size());
+    }
+
+    @Test
+    public void get_servesFromCacheUntilExpired() {
+        long[] now = {0};
+        PropertyCache cache = new PropertyCache(() -> "[a]: [" + now[0] + "]", () -> now[0], 1000);
+
+        assertEquals("0", cache.get("a"));
+        now[0] = TimeUnit.MILLISECONDS.toNanos(999);
+        assertEquals("0", cache.get("a"));
+        assertEquals("none", cache.get("b", "none"));
+        assertEquals(1, cache.getLoadCount());
+
+        now[0] = TimeUnit.MILLISECONDS.toNanos(1000);
+        assertEquals(String.valueOf(now[0]), cache.get("a"));
+        assertEquals(2, cache.getLoadCount());
+    }
+
+    @Test
+    public void expired_secondReaderGetsStaleMapDuringRefresh() throws Exception {
+        long[] now = {0};
+        AtomicInteger dumps = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PropertyCache cache = new PropertyCache(() -> {
+            int dump = dumps.incrementAndGet();
+            if (dump == 2) {
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return "[a]: [" + dump + "]";
+        }, () -> now[0], 1000);
+        assertEquals("1", cache.get("a"));
+
+        now[0] = TimeUnit.MILLISECONDS.toNanos(1000);
+        String[] first = new String[1];
+        Thread reader = new Thread(() -> first[0] = cache.get("a"));
+        reader.start();
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        // the dump is still running, the second reader does not wait for it
+        assertEquals("1", cache.get("a"));
+        release.countDown();
+        reader.join();
+        assertEquals("2", first[0]);
+        assertEquals("2", cache.get("a"));
+        assertEquals(2, dumps.get());
+    }
+
+    @Test
+    public void shellSession_reusesProcess() throws Exception {
+        try (ShellSession shell = new ShellSession("/bin/sh")) {
+            assertEquals("1\n2", shell.run("echo 1; echo 2"));
+            assertEquals("no newline", shell.run("printf 'no newline'"));
+            shell.run("X=kept");
+            assertEquals("kept", shell.run("echo $X"));
+            assertEquals("", shell.run("echo oops >&2"));
+        }
+        assertEquals("solo", ShellSession.exec("echo solo; echo err >&2", "/bin/sh"));
+    }
+}
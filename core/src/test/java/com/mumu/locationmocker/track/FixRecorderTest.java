@@ -0,0 +1,110 @@
+package com.mumu.locationmocker.track;
+
+import com.mumu.locationmocker.engine.PlaybackSource;
+import com.mumu.locationmocker.transport.LocationFrame;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FixRecorderTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void fixes_readBackInOrder() throws Exception {
+        File file = new File(mFolder.getRoot(), "fixes.bin");
+        FixRecorder recorder = new FixRecorder(file);
+        int fixes = 1000;
+        for (int i = 0; i < fixes; i++) {
+            recorder.onFix(i % 3 == 0 ? FixRecorder.PROVIDER_FUSED : FixRecorder.PROVIDER_GPS,
+                    i * 1000000000L, 1700000000000L + i * 1000L, 25.0 + i * 1e-5, 121.0 - i * 1e-5,
+                    12.5, 3.9f + i % 5, 90.0f, 1.25f);
+            // fixes come once a second, not in a burst
+            if (i % 200 == 0)
+                recorder.flush();
+        }
+        recorder.flush();
+        long flushed = file.length();
+        recorder.close();
+        assertNull(recorder.getError());
+        assertEquals(0, recorder.getDroppedCount());
+        assertEquals(flushed, file.length());
+
+        FixLogReader reader = FixLogReader.open(file);
+        for (int i = 0; i < fixes; i++) {
+            assertTrue(reader.next());
+            assertEquals(i % 3 == 0 ? FixRecorder.PROVIDER_FUSED : FixRecorder.PROVIDER_GPS, reader.getProvider());
+            assertEquals(i * 1000L, reader.getElapsedMillis());
+            assertEquals(1700000000000L + i * 1000L, reader.getUtcMillis());
+            assertEquals(25.0 + i * 1e-5, reader.getLatitude(), 1e-6);
+            assertEquals(121.0 - i * 1e-5, reader.getLongitude(), 1e-6);
+            assertEquals(12.5, reader.getAltitude(), 0.0);
+            assertEquals(3.9f + i % 5, reader.getAccuracy(), 1e-6f);
+        }
+        assertFalse(reader.next());
+        assertTrue(file.length() / fixes < 16);
+    }
+
+    @Test
+    public void closeAsync_writesTheRestOnTheRecorderThread() throws Exception {
+        File file = new File(mFolder.getRoot(), "fixes.bin");
+        FixRecorder recorder = new FixRecorder(file);
+        for (int i = 0; i < 10; i++)
+            recorder.onFix(FixRecorder.PROVIDER_GPS, i * 1000000000L, 1700000000000L + i * 1000L,
+                    25.0, 121.0, 0, 5.0f, 0, 0);
+
+        CountDownLatch closed = new CountDownLatch(1);
+        recorder.closeAsync(closed::countDown);
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        assertNull(recorder.getError());
+
+        FixLogReader reader = FixLogReader.open(file);
+        int read = 0;
+        while (reader.next())
+            read++;
+        assertEquals(10, read);
+    }
+
+    @Test
+    public void playback_findsGpsFixesLateInTheLog() throws Exception {
+        File file = new File(mFolder.getRoot(), "fixes.bin");
+        FixRecorder recorder = new FixRecorder(file);
+        // two full blocks of fused fixes before the first GPS fix
+        for (int i = 0; i < 2 * FixRecorder.BLOCK_SIZE + 10; i++) {
+            recorder.onFix(i < 2 * FixRecorder.BLOCK_SIZE ? FixRecorder.PROVIDER_FUSED : FixRecorder.PROVIDER_GPS,
+                    i * 1000000000L, 1700000000000L + i * 1000L, 25.0, 121.0, 0, 5.0f, 0, 0);
+            if (i % 100 == 0)
+                recorder.flush();
+        }
+        recorder.close();
+        assertEquals(0, recorder.getDroppedCount());
+
+        PlaybackSource source = Recordings.open(file);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(source.next());
+            assertEquals((2 * FixRecorder.BLOCK_SIZE + i) * 1000L, source.getTimeMillis());
+        }
+        assertFalse(source.next());
+    }
+
+    @Test
+    public void locationFrames_areNotAFixLog() {
+        ByteBuffer frames = ByteBuffer.allocate(LocationFrame.SIZE * 2);
+        LocationFrame.write(frames, 0, 1, 1000L, 25.0, 121.0, 10.0, 5.0f, 0.0f, 1.0f);
+        LocationFrame.write(frames, LocationFrame.SIZE, 2, 2000L, 25.0, 121.0, 10.0, 5.0f, 0.0f, 1.0f);
+        assertFalse(Recordings.isRecording(frames));
+        try {
+            Recordings.open(frames);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
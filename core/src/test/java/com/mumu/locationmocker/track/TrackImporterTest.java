@@ -0,0 +1,86 @@
+package com.mumu.locationmocker.track;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class TrackImporterTest {
+    private static ByteBuffer bytes(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void gpx_readsTrackAndRoutePoints() {
+        Track track = TrackImporter.parse(bytes(
+                "\uFEFF<?xml version=\"1.0\"?>\n" +
+                "<!-- <trkpt lat=\"1\" lon=\"1\"/> -->\n" +
+                "<gpx version=\"1.1\" creator=\"a > b\">\n" +
+                "  <wpt lat=\"10\" lon=\"10\"/>\n" +
+                "  <trk><trkseg>\n" +
+                "    <trkpt lat=\"25.0335\" lon=\"121.5642\"><ele>10</ele></trkpt>\n" +
+                "    <trkpt lon='121.5650' lat='-25.034e0'/>\n" +
+                "    <trkpt lat=\"north\" lon=\"121.6\"/>\n" +
+                "  </trkseg></trk>\n" +
+                "  <rte><rtept lat=\"25.04\" lon=\"121.57\"></rtept></rte>\n" +
+                "</gpx>\n"));
+        assertEquals(3, track.size());
+        assertEquals(25.0335, track.getLatitude(0), 0.0);
+        assertEquals(121.5642, track.getLongitude(0), 0.0);
+        assertEquals(-25.034, track.getLatitude(1), 0.0);
+        assertEquals(121.565, track.getLongitude(1), 0.0);
+        assertEquals(25.04, track.getLatitude(2), 0.0);
+    }
+
+    @Test
+    public void kml_readsLineStringsAndGxTracks() {
+        Track track = TrackImporter.parse(bytes(
+                "<kml xmlns=\"http://www.opengis.net/kml/2.2\" xmlns:gx=\"http://www.google.com/kml/ext/2.2\">\n" +
+                "<Document>\n" +
+                "  <Placemark><Point><coordinates>0,0,0</coordinates></Point></Placemark>\n" +
+                "  <Placemark><LineString><coordinates>\n" +
+                "    121.5642,25.0335,0 121.5650,25.0340\n" +
+                "    121.5660,25.0350,12\n" +
+                "  </coordinates></LineString></Placemark>\n" +
+                "  <Placemark><gx:Track>\n" +
+                "    <when>2024-01-01T00:00:00Z</when>\n" +
+                "    <gx:coord>121.57 25.04 10</gx:coord>\n" +
+                "  </gx:Track></Placemark>\n" +
+                "</Document></kml>"));
+        assertEquals(4, track.size());
+        assertEquals(25.0335, track.getLatitude(0), 0.0);
+        assertEquals(121.566, track.getLongitude(2), 0.0);
+        assertEquals(25.04, track.getLatitude(3), 0.0);
+        assertEquals(121.57, track.getLongitude(3), 0.0);
+    }
+
+    @Test
+    public void geoJson_readsLinePositions() {
+        Track track = TrackImporter.parse(bytes(
+                "{\"type\":\"FeatureCollection\",\"features\":[\n" +
+                "  {\"type\":\"Feature\",\"properties\":{\"name\":\"coordinates \\\"quoted\\\"\"},\n" +
+                "   \"geometry\":{\"type\":\"Point\",\"coordinates\":[1.0,2.0]}},\n" +
+                "  {\"type\":\"Feature\",\"properties\":null,\n" +
+                "   \"geometry\":{\"type\":\"MultiLineString\",\"coordinates\":[\n" +
+                "     [[121.5642, 25.0335, 3], [121.565,25.034]],\n" +
+                "     [[121.566,25.035]]]}}]}"));
+        assertEquals(3, track.size());
+        assertEquals(25.0335, track.getLatitude(0), 0.0);
+        assertEquals(121.5642, track.getLongitude(0), 0.0);
+        assertEquals(25.035, track.getLatitude(2), 0.0);
+    }
+
+    @Test
+    public void detectFormat_unknown() {
+        assertEquals(TrackImporter.FORMAT_GPX, TrackImporter.detectFormat(bytes("<x:gpx>")));
+        assertEquals(TrackImporter.FORMAT_UNKNOWN, TrackImporter.detectFormat(bytes("<html></html>")));
+        assertEquals(TrackImporter.FORMAT_UNKNOWN, TrackImporter.detectFormat(bytes("lat,lng")));
+        try {
+            TrackImporter.parse(bytes("lat,lng"));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.mumu.locationmocker.track;
+
+import com.mumu.locationmocker.engine.PlaybackSource;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TrackRecorderTest {
+    private static final long MILLISECOND = 1000000L;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void recording_readsBackAcrossSegments() throws Exception {
+        File directory = mFolder.newFolder("tracks");
+        long[] now = {0};
+        TrackRecorder recorder = new TrackRecorder(directory, () -> now[0], 64 * 1024, 3);
+
+        int frames = 40000;
+        for (int i = 0; i < frames; i++) {
+            now[0] += 250 * MILLISECOND;
+            recorder.onLocation(lat(i), 121.0 + i * 0.000002, 10.0, 5.0f, (i / 100) % 360, 1.4f);
+            // a real session is far slower than this loop, give the flusher a chance
+            if (i % 1000 == 0)
+                recorder.flush();
+        }
+        recorder.close();
+        assertNull(recorder.getError());
+        assertEquals(0, recorder.getDroppedCount());
+        assertEquals(frames, recorder.getRecordedCount());
+
+        // a frame is a few bytes, so 40000 of them rotate into more than 3 segments
+        File[] segments = TrackRecorder.listSegments(directory);
+        assertEquals(3, segments.length);
+        long bytes = 0;
+        for (File segment : segments)
+            bytes += segment.length();
+
+        int decoded = 0;
+        long lastTime = 0;
+        int first = -1;
+        for (File segment : segments) {
+            TrackRecordReader reader = TrackRecordReader.open(segment);
+            while (reader.next()) {
+                if (first < 0)
+                    first = (int) (reader.getTimeMillis() / 250) - 1;
+                int i = first + decoded;
+                assertEquals((i + 1) * 250L, reader.getTimeMillis());
+                assertTrue(reader.getTimeMillis() > lastTime);
+                assertEquals(lat(i), reader.getLatitude(), 1e-6);
+                assertEquals(121.0 + i * 0.000002, reader.getLongitude(), 1e-6);
+                assertEquals(10.0, reader.getAltitude(), 0.0);
+                assertEquals((i / 100) % 360, reader.getBearing(), 0.0);
+                assertEquals(1.4f, reader.getSpeed(), 1e-6f);
+                lastTime = reader.getTimeMillis();
+                decoded++;
+            }
+        }
+        assertEquals(frames, first + decoded);
+        assertTrue(bytes / decoded < 8);
+
+        // the directory plays as one track
+        PlaybackSource source = Recordings.open(directory);
+        for (int i = first; i < frames; i++) {
+            assertTrue(source.next());
+            assertEquals((i + 1) * 250L, source.getTimeMillis());
+        }
+        assertFalse(source.next());
+
+        // nothing to play is an error, not an empty track
+        try {
+            Recordings.open(mFolder.newFolder("empty"));
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void closeAsync_writesTheRestOnTheRecorderThread() throws Exception {
+        File directory = mFolder.newFolder("tracks");
+        long[] now = {0};
+        TrackRecorder recorder = new TrackRecorder(directory, () -> now[0], 64 * 1024, 1);
+        for (int i = 0; i < 10; i++) {
+            now[0] += 1000 * MILLISECOND;
+            recorder.onLocation(lat(i), 121.0, 0, 0, 0, 0);
+        }
+
+        CountDownLatch closed = new CountDownLatch(1);
+        recorder.closeAsync(closed::countDown);
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        assertNull(recorder.getError());
+
+        TrackRecordReader reader = TrackRecordReader.open(TrackRecorder.listSegments(directory)[0]);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(reader.next());
+            assertEquals(lat(i), reader.getLatitude(), 1e-6);
+        }
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void reader_stopsAtTruncatedFrame() throws Exception {
+        File directory = mFolder.newFolder("tracks");
+        long[] now = {0};
+        TrackRecorder recorder = new TrackRecorder(directory, () -> now[0], 64 * 1024, 1);
+        recorder.onLocation(25.0, 121.0, 0, 0, 0, 0);
+        now[0] += 1000 * MILLISECOND;
+        recorder.onLocation(25.001, 121.001, 0, 0, 0, 0);
+        recorder.close();
+
+        File segment = TrackRecorder.listSegments(directory)[0];
+        try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(segment, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+        TrackRecordReader reader = TrackRecordReader.open(segment);
+        assertTrue(reader.next());
+        assertEquals(25.0, reader.getLatitude(), 0.0);
+        assertFalse(reader.next());
+    }
+
+    private static double lat(int i) {
+        return 25.0 + Math.sin(i / 50.0) * 0.001;
+    }
+}
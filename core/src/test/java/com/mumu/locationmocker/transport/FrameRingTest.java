@@ -0,0 +1,104 @@
+package com.mumu.locationmocker.transport;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static org.junit.Assert.*;
+
+public class FrameRingTest {
+    private static MappedByteBuffer map(File file, int size) throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    @Test
+    public void reader_seesLatestAndHistory() throws Exception {
+        File file = File.createTempFile("frames", ".ring");
+        file.deleteOnExit();
+        int size = FrameRing.bytesFor(4);
+        FrameRing writer = FrameRing.create(map(file, size), 4);
+        FrameRing reader = FrameRing.attach(map(file, size));
+        ByteBuffer frame = ByteBuffer.allocate(LocationFrame.SIZE);
+
+        assertEquals(-1, reader.readLatest(frame, 0));
+        for (int i = 0; i < 6; i++)
+            writer.write(i, 25.0 + i, 121.0, 0, 1, 0, 0);
+
+        assertEquals(5, reader.readLatest(frame, 0));
+        assertEquals(30.0, LocationFrame.getLatitude(frame, 0), 0.0);
+        assertTrue(reader.read(2, frame, 0));
+        assertEquals(27.0, LocationFrame.getLatitude(frame, 0), 0.0);
+        assertFalse(reader.read(1, frame, 0)); // overwritten
+        assertFalse(reader.read(6, frame, 0)); // not written yet
+    }
+
+    @Test
+    public void concurrentReader_neverSeesTornFrame() throws Exception {
+        File file = File.createTempFile("frames", ".ring");
+        file.deleteOnExit();
+        int size = FrameRing.bytesFor(8);
+        FrameRing writer = FrameRing.create(map(file, size), 8);
+        FrameRing reader = FrameRing.attach(map(file, size));
+
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < 200000; i++)
+                writer.write(i, i, -i, i, 0, 0, 0);
+        });
+        producer.start();
+
+        ByteBuffer frame = ByteBuffer.allocate(LocationFrame.SIZE);
+        long last = -1;
+        while (producer.isAlive() || last < 199999) {
+            long sequence = reader.readLatest(frame, 0);
+            if (sequence < 0)
+                continue;
+            assertTrue(sequence >= last);
+            assertEquals(sequence, LocationFrame.getSequence(frame, 0));
+            assertEquals((double) sequence, LocationFrame.getLatitude(frame, 0), 0.0);
+            assertEquals(-(double) sequence, LocationFrame.getLongitude(frame, 0), 0.0);
+            last = sequence;
+        }
+        producer.join();
+    }
+
+    @Test
+    public void halfWrittenFrame_isReadAgain() throws Exception {
+        File file = File.createTempFile("frames", ".ring");
+        file.deleteOnExit();
+        int size = FrameRing.bytesFor(4);
+        MappedByteBuffer shared = map(file, size);
+        FrameRing writer = FrameRing.create(shared, 4);
+        FrameRing reader = FrameRing.attach(map(file, size));
+        writer.write(0, 25.0, 121.0, 0, 1, 0, 0);
+
+        // latitude visible before the rest of the frame, with an even seqlock
+        int latitude = FrameRing.HEADER_SIZE + 24;
+        double written = shared.getDouble(latitude);
+        shared.putDouble(latitude, 99.0);
+        Thread repair = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            shared.putDouble(latitude, written);
+        });
+        repair.start();
+
+        ByteBuffer frame = ByteBuffer.allocate(LocationFrame.SIZE);
+        assertEquals(0, reader.readLatest(frame, 0));
+        assertEquals(25.0, LocationFrame.getLatitude(frame, 0), 0.0);
+        repair.join();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void attach_rejectsForeignBuffer() {
+        FrameRing.attach(ByteBuffer.allocate(FrameRing.bytesFor(2)));
+    }
+}
@@ -0,0 +1,96 @@
+package com.mumu.locationmocker.transport;
+
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class FrameStreamerTest {
+    private long mNow = 0;
+    private int mFallbacks = 0;
+
+    // a TCP loopback socket stands in for the local socket of the device
+    private FrameStreamer.Connector connector(int port) {
+        return () -> {
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            OutputStream output = socket.getOutputStream();
+            return new FrameStreamer.Connection() {
+                @Override
+                public void write(byte[] buf, int offset, int length) throws IOException {
+                    output.write(buf, offset, length);
+                }
+
+                @Override
+                public void close() {
+                    try {
+                        socket.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            };
+        };
+    }
+
+    @Test
+    public void frames_arriveInOrder() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            FrameStreamer streamer = new FrameStreamer(connector(server.getLocalPort()),
+                    (lat, lng, alt, acc, bear, spd) -> mFallbacks++, () -> mNow);
+            for (int i = 0; i < 100; i++) {
+                mNow += 1000;
+                streamer.onLocation(25.0 + i * 0.001, 121.0, 10.0, 3.5f, 90f, 1.2f);
+            }
+
+            try (Socket peer = server.accept()) {
+                DataInputStream input = new DataInputStream(peer.getInputStream());
+                byte[] frame = new byte[LocationFrame.SIZE];
+                ByteBuffer buf = ByteBuffer.wrap(frame);
+                for (int i = 0; i < 100; i++) {
+                    input.readFully(frame);
+                    assertTrue(LocationFrame.isValid(buf, 0));
+                    assertEquals(i, LocationFrame.getSequence(buf, 0));
+                    assertEquals((i + 1) * 1000L, LocationFrame.getTimestampNanos(buf, 0));
+                    assertEquals(25.0 + i * 0.001, LocationFrame.getLatitude(buf, 0), 0.0);
+                    assertEquals(3.5f, LocationFrame.getAccuracy(buf, 0), 0.0f);
+                }
+            }
+            streamer.close();
+        }
+        assertEquals(0, mFallbacks);
+    }
+
+    @Test
+    public void unreachable_fallsBackAndRetries() throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = probe.getLocalPort();
+        }
+
+        FrameStreamer streamer = new FrameStreamer(connector(port),
+                (lat, lng, alt, acc, bear, spd) -> mFallbacks++, () -> mNow);
+        streamer.onLocation(25.0, 121.0, 0, 1, 0, 0);
+        streamer.onLocation(25.0, 121.0, 0, 1, 0, 0);
+        assertEquals(2, mFallbacks);
+        assertFalse(streamer.isConnected());
+
+        try (ServerSocket server = new ServerSocket(port, 1, InetAddress.getLoopbackAddress())) {
+            // still backing off
+            streamer.onLocation(25.0, 121.0, 0, 1, 0, 0);
+            assertEquals(3, mFallbacks);
+
+            mNow += 1000000000L;
+            streamer.onLocation(25.0, 121.0, 0, 1, 0, 0);
+            assertTrue(streamer.isConnected());
+            assertEquals(1, streamer.getStreamedCount());
+            server.accept().close();
+        }
+        streamer.close();
+    }
+}